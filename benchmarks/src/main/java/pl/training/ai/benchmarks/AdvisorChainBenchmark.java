@@ -0,0 +1,53 @@
+package pl.training.ai.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
+import pl.training.ai.chat.TimestampAdvisor;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of a {@link ChatClient} call and its advisor chain against a stubbed chat model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AdvisorChainBenchmark {
+
+    @Param({"none", "timestamp", "logger", "timestamp,logger"})
+    private String advisors;
+
+    private ChatClient chatClient;
+
+    @Setup
+    public void setUp() {
+        var defaultAdvisors = new ArrayList<Advisor>();
+        if (advisors.contains("timestamp")) {
+            defaultAdvisors.add(new TimestampAdvisor());
+        }
+        if (advisors.contains("logger")) {
+            defaultAdvisors.add(SimpleLoggerAdvisor.builder().build());
+        }
+        chatClient = ChatClient.builder(new StubChatModel("Why do Java developers wear glasses? Because they don't C#."))
+                .defaultAdvisors(defaultAdvisors)
+                .build();
+    }
+
+    @Benchmark
+    public String call() {
+        return chatClient.prompt()
+                .user(spec -> spec
+                        .text("Tell me a joke about {topic}")
+                        .param("topic", "software developer")
+                )
+                .call()
+                .content();
+    }
+
+}
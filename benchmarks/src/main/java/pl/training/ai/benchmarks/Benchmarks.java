@@ -0,0 +1,31 @@
+package pl.training.ai.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Runs the benchmarks with the regular JMH command line. Unless a result format is given, results are written as
+ * JSON to {@code results/jmh-<timestamp>.json}, so runs of different releases can be compared.
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws Exception {
+        var commandLine = new CommandLineOptions(args);
+        var options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue() && !commandLine.getResult().hasValue()) {
+            var results = Files.createDirectories(Path.of("results"));
+            var timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            options.resultFormat(ResultFormatType.JSON)
+                    .result(results.resolve("jmh-" + timestamp + ".json").toString());
+        }
+        new Runner(options.build()).run();
+    }
+
+}
@@ -0,0 +1,64 @@
+package pl.training.ai.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.ai.converter.MapOutputConverter;
+import pl.training.ai.chat.Book;
+import pl.training.ai.rag.TrainingList;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses model answers into the structured types returned by the controllers. {@code ChatClient.entity} creates a new
+ * converter per call, so its construction (JSON schema generation) is measured separately.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutputConverterBenchmark {
+
+    private static final String BOOK = """
+            ```json
+            {"author": "Joshua Bloch", "title": "Effective Java", "description": "Best practices for the Java platform"}
+            ```""";
+    private static final String TRAININGS = """
+            {"trainings": [
+                {"code": "JAVA-01", "title": "Java for beginners", "price": 1200.0},
+                {"code": "SPRING-02", "title": "Spring Boot in practice", "price": 2400.0},
+                {"code": "AI-03", "title": "Spring AI", "price": 3100.0}
+            ]}""";
+
+    private final BeanOutputConverter<Book> bookConverter = new BeanOutputConverter<>(Book.class);
+    private final BeanOutputConverter<TrainingList> trainingListConverter = new BeanOutputConverter<>(TrainingList.class);
+    private final MapOutputConverter mapConverter = new MapOutputConverter();
+
+    @Benchmark
+    public Book book() {
+        return bookConverter.convert(BOOK);
+    }
+
+    @Benchmark
+    public TrainingList trainingList() {
+        return trainingListConverter.convert(TRAININGS);
+    }
+
+    @Benchmark
+    public Map<String, Object> map() {
+        return mapConverter.convert(TRAININGS);
+    }
+
+    @Benchmark
+    public String bookConverterCreation() {
+        return new BeanOutputConverter<>(Book.class).getFormat();
+    }
+
+    @Benchmark
+    public String trainingListConverterCreation() {
+        return new BeanOutputConverter<>(TrainingList.class).getFormat();
+    }
+
+}
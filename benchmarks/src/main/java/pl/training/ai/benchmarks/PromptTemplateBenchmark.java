@@ -0,0 +1,91 @@
+package pl.training.ai.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.ai.chat.prompt.SystemPromptTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import pl.training.ai.PromptTemplates;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the {@code prompts/*.st} templates from the resource on every call, as the controllers used to, and from
+ * the compiled {@link PromptTemplates} registry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromptTemplateBenchmark {
+
+    private static final String INPUT = "How do I configure a DataSource in Spring Boot?";
+    private static final String DOCUMENTS = "Spring Boot can auto-configure embedded H2, HSQL and Derby databases.\n".repeat(20);
+
+    private final Resource springDoc = new ClassPathResource("prompts/spring-doc.st");
+    private final Resource devAssistant = new ClassPathResource("prompts/dev-assistant.st");
+    private final Resource fewShot = new ClassPathResource("prompts/few-shot.st");
+    private final Resource multiStep = new ClassPathResource("prompts/multi-step.st");
+    private final Resource travel = new ClassPathResource("prompts/travel-prompt.st");
+    private final Resource summary = new ClassPathResource("prompts/summary-prompt.st");
+
+    private PromptTemplates promptTemplates;
+
+    @Setup
+    public void setUp() throws IOException {
+        promptTemplates = new PromptTemplates("classpath:prompts/", false, new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public Prompt springDoc() {
+        return new PromptTemplate(springDoc).create(Map.of("input", INPUT, "documents", DOCUMENTS));
+    }
+
+    @Benchmark
+    public Message devAssistant() {
+        return new SystemPromptTemplate(devAssistant).createMessage(Map.of("programming_language", "Java"));
+    }
+
+    @Benchmark
+    public Message fewShot() {
+        return new SystemPromptTemplate(fewShot).createMessage(Map.of("few_shot_prompts", DOCUMENTS));
+    }
+
+    @Benchmark
+    public Message multiStep() {
+        return new PromptTemplate(multiStep).createMessage(Map.of("input", INPUT));
+    }
+
+    @Benchmark
+    public Message travel() {
+        return new PromptTemplate(travel).createMessage(Map.of("context", DOCUMENTS, "input", INPUT));
+    }
+
+    @Benchmark
+    public Prompt summary() {
+        return new PromptTemplate(summary).create(Map.of("input", DOCUMENTS));
+    }
+
+    @Benchmark
+    public String compiledSpringDoc() {
+        return promptTemplates.render("spring-doc", Map.of("input", INPUT, "documents", DOCUMENTS));
+    }
+
+    @Benchmark
+    public String compiledDevAssistant() {
+        return promptTemplates.render("dev-assistant", Map.of("programming_language", "Java"));
+    }
+
+    @Benchmark
+    public String compiledFewShot() {
+        return promptTemplates.renderOnce("few-shot", Map.of("few_shot_prompts", DOCUMENTS));
+    }
+
+}
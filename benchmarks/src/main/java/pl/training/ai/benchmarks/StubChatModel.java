@@ -0,0 +1,27 @@
+package pl.training.ai.benchmarks;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.List;
+
+/**
+ * Answers every prompt with a fixed text and no network round-trip.
+ */
+public class StubChatModel implements ChatModel {
+
+    private final String answer;
+
+    public StubChatModel(String answer) {
+        this.answer = answer;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(answer))));
+    }
+
+}
@@ -0,0 +1,51 @@
+package pl.training.ai.benchmarks;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/**
+ * Returns deterministic pseudo-random vectors derived from the text, so benchmarks measure the local code only.
+ */
+public class StubEmbeddingModel implements EmbeddingModel {
+
+    private final int dimensions;
+
+    public StubEmbeddingModel(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        var embeddings = new ArrayList<Embedding>(request.getInstructions().size());
+        for (var text : request.getInstructions()) {
+            embeddings.add(new Embedding(vector(text), embeddings.size()));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return vector(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    private float[] vector(String text) {
+        var random = new SplittableRandom(text.hashCode());
+        var vector = new float[dimensions];
+        for (int index = 0; index < dimensions; index++) {
+            vector[index] = (float) random.nextDouble(-1, 1);
+        }
+        return vector;
+    }
+
+}
@@ -0,0 +1,77 @@
+package pl.training.ai.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
+import pl.training.ai.rag.HnswVectorStore;
+import pl.training.ai.rag.MappedVectorStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-5 similarity search over {@link SimpleVectorStore}, the exact scan of {@link MappedVectorStore} and the graph of
+ * {@link HnswVectorStore}. Vectors have 256 dimensions by default, so the 1M case fits in memory; pass
+ * {@code -p dimensions=1536} to match the OpenAI model. The HNSW search trades recall for latency with
+ * {@code -p efSearch=32,64,128}, the recall itself is checked by {@code HnswVectorStoreTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Xmx12g"})
+public class VectorSearchBenchmark {
+
+    private static final int QUERIES = 128;
+
+    @Param({"1000", "100000", "1000000"})
+    private int size;
+
+    @Param({"simple", "flat", "hnsw"})
+    private String store;
+
+    @Param({"256"})
+    private int dimensions;
+
+    // only used by the hnsw store
+    @Param({"64"})
+    private int efSearch;
+
+    private VectorStore vectorStore;
+    private List<SearchRequest> requests;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        var embeddingModel = new StubEmbeddingModel(dimensions);
+        vectorStore = switch (store) {
+            case "simple" -> SimpleVectorStore.builder(embeddingModel).build();
+            case "flat" -> new MappedVectorStore(embeddingModel, Files.createTempDirectory("vector-search"), "benchmark");
+            case "hnsw" -> new HnswVectorStore(embeddingModel, new HnswVectorStore.Parameters(16, 200, efSearch, 0.25),
+                    Files.createTempDirectory("vector-search"), "benchmark");
+            default -> throw new IllegalArgumentException("Unknown store: " + store);
+        };
+        var documents = new ArrayList<Document>(size);
+        for (int index = 0; index < size; index++) {
+            documents.add(new Document("Document " + index));
+        }
+        vectorStore.add(documents);
+        requests = new ArrayList<>(QUERIES);
+        for (int index = 0; index < QUERIES; index++) {
+            requests.add(SearchRequest.builder().query("Query " + index).topK(5).build());
+        }
+    }
+
+    @Benchmark
+    public List<Document> similaritySearch() {
+        var request = requests.get(next++ & (QUERIES - 1));
+        return vectorStore.similaritySearch(request);
+    }
+
+}
@@ -0,0 +1,15 @@
+package pl.training.llmstub;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+
+@ConfigurationPropertiesScan
+@SpringBootApplication
+public class LlmStubApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(LlmStubApplication.class, args);
+    }
+
+}
@@ -0,0 +1,67 @@
+package pl.training.llmstub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Ollama compatible chat API, streaming newline-delimited JSON unless {@code stream} is {@code false}.
+ */
+@RestController
+@RequestMapping("api")
+public class OllamaStubController {
+
+    private final StubBehavior behavior;
+
+    public OllamaStubController(StubBehavior behavior) {
+        this.behavior = behavior;
+    }
+
+    @PostMapping("chat")
+    public Mono<ResponseEntity<Object>> chat(@RequestBody JsonNode request) {
+        var model = request.path("model").asText("ollama-stub");
+        var prompt = StubBehavior.promptText(request.path("messages"));
+        var tokens = behavior.answer(prompt);
+        var promptTokens = StubBehavior.estimateTokens(prompt);
+        var start = System.nanoTime();
+        if (!request.path("stream").asBoolean(true)) {
+            return behavior.firstTokenDelay()
+                    .then(Mono.delay(behavior.generationTime(tokens.size())))
+                    .then(Mono.fromSupplier(() -> ResponseEntity.<Object>ok(
+                            done(model, String.join("", tokens), promptTokens, tokens.size(), start))));
+        }
+        var chunks = behavior.stream(tokens)
+                .map(token -> message(model, token, false))
+                .concatWith(Mono.fromSupplier(() -> done(model, "", promptTokens, tokens.size(), start)));
+        return behavior.firstTokenDelay()
+                .thenReturn(ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).<Object>body(chunks));
+    }
+
+    private static Map<String, Object> message(String model, String content, boolean done) {
+        var message = new HashMap<String, Object>();
+        message.put("model", model);
+        message.put("created_at", Instant.now().toString());
+        message.put("message", Map.of("role", "assistant", "content", content));
+        message.put("done", done);
+        return message;
+    }
+
+    private static Map<String, Object> done(String model, String content, int promptTokens, int evalTokens, long start) {
+        var message = message(model, content, true);
+        message.put("done_reason", "stop");
+        message.put("total_duration", System.nanoTime() - start);
+        message.put("prompt_eval_count", promptTokens);
+        message.put("eval_count", evalTokens);
+        return message;
+    }
+
+}
@@ -0,0 +1,179 @@
+package pl.training.llmstub;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.codec.multipart.FormFieldPart;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * OpenAI compatible chat completions (including SSE streaming), embeddings, images, speech and transcription.
+ */
+@RestController
+@RequestMapping("v1")
+public class OpenAiStubController {
+
+    private static final byte[] IMAGE = Base64.getDecoder()
+            .decode("iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mNkYPhfDwAChwGA60e6kgAAAABJRU5ErkJggg==");
+    // MPEG-1 Layer III, 128 kbps, 44.1 kHz frame with empty side info, i.e. 26 ms of silence
+    private static final byte[] SILENT_FRAME = silentFrame();
+
+    private final StubBehavior behavior;
+    private final ObjectMapper objectMapper;
+
+    public OpenAiStubController(StubBehavior behavior, ObjectMapper objectMapper) {
+        this.behavior = behavior;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostMapping("chat/completions")
+    public Mono<ResponseEntity<Object>> chatCompletions(@RequestBody JsonNode request) {
+        var id = "chatcmpl-" + UUID.randomUUID();
+        var model = request.path("model").asText("gpt-stub");
+        var prompt = StubBehavior.promptText(request.path("messages"));
+        var tokens = behavior.answer(prompt);
+        var usage = usage(StubBehavior.estimateTokens(prompt), tokens.size());
+        if (!request.path("stream").asBoolean()) {
+            var message = Map.of("role", "assistant", "content", String.join("", tokens));
+            var choice = Map.of("index", 0, "message", message, "finish_reason", "stop");
+            var completion = completion(id, "chat.completion", model, List.of(choice));
+            completion.put("usage", usage);
+            return behavior.firstTokenDelay()
+                    .then(Mono.delay(behavior.generationTime(tokens.size())))
+                    .thenReturn(ResponseEntity.<Object>ok(completion));
+        }
+        var includeUsage = request.path("stream_options").path("include_usage").asBoolean();
+        var chunks = behavior.stream(tokens)
+                .index()
+                .map(token -> chunk(id, model, token.getT1() == 0
+                        ? Map.of("role", "assistant", "content", token.getT2())
+                        : Map.of("content", token.getT2()), null))
+                .concatWith(Mono.fromSupplier(() -> chunk(id, model, Map.of(), "stop")))
+                .concatWith(includeUsage ? Mono.fromSupplier(() -> {
+                    var chunk = completion(id, "chat.completion.chunk", model, List.of());
+                    chunk.put("usage", usage);
+                    return chunk;
+                }) : Mono.empty())
+                .map(chunk -> ServerSentEvent.builder(toJson(chunk)).build())
+                .concatWith(Mono.just(ServerSentEvent.builder("[DONE]").build()));
+        return behavior.firstTokenDelay()
+                .thenReturn(ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).<Object>body(chunks));
+    }
+
+    @PostMapping("embeddings")
+    public Mono<Map<String, Object>> embeddings(@RequestBody JsonNode request) {
+        var inputs = new ArrayList<String>();
+        if (request.path("input").isArray()) {
+            request.path("input").forEach(input -> inputs.add(input.asText()));
+        } else {
+            inputs.add(request.path("input").asText());
+        }
+        var data = new ArrayList<Map<String, Object>>(inputs.size());
+        var tokens = 0;
+        for (var input : inputs) {
+            data.add(Map.of("object", "embedding", "index", data.size(), "embedding", behavior.embedding(input)));
+            tokens += StubBehavior.estimateTokens(input);
+        }
+        Map<String, Object> response = Map.of(
+                "object", "list",
+                "data", data,
+                "model", request.path("model").asText("text-embedding-stub"),
+                "usage", Map.of("prompt_tokens", tokens, "total_tokens", tokens));
+        return behavior.firstTokenDelay().thenReturn(response);
+    }
+
+    @PostMapping("images/generations")
+    public Mono<Map<String, Object>> images(@RequestBody JsonNode request, ServerHttpRequest httpRequest) {
+        var image = new HashMap<String, Object>();
+        image.put("revised_prompt", request.path("prompt").asText());
+        if ("b64_json".equals(request.path("response_format").asText())) {
+            image.put("b64_json", Base64.getEncoder().encodeToString(IMAGE));
+        } else {
+            image.put("url", httpRequest.getURI().resolve("/v1/stub/image.png").toString());
+        }
+        Map<String, Object> response = Map.of("created", Instant.now().getEpochSecond(), "data", List.of(image));
+        return behavior.firstTokenDelay().thenReturn(response);
+    }
+
+    @GetMapping(value = "stub/image.png", produces = MediaType.IMAGE_PNG_VALUE)
+    public byte[] image() {
+        return IMAGE;
+    }
+
+    @PostMapping(value = "audio/speech", produces = "audio/mpeg")
+    public Mono<byte[]> speech(@RequestBody JsonNode request) {
+        // about 0.3 s of audio per word
+        var words = request.path("input").asText().split("\\s+").length;
+        var frames = words * 12;
+        var audio = new byte[frames * SILENT_FRAME.length];
+        for (int frame = 0; frame < frames; frame++) {
+            System.arraycopy(SILENT_FRAME, 0, audio, frame * SILENT_FRAME.length, SILENT_FRAME.length);
+        }
+        return behavior.firstTokenDelay().thenReturn(audio);
+    }
+
+    @PostMapping(value = "audio/transcriptions", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<Object>> transcriptions(ServerWebExchange exchange) {
+        return exchange.getMultipartData().flatMap(parts -> {
+            var format = parts.getFirst("response_format") instanceof FormFieldPart field ? field.value() : "json";
+            var text = String.join("", behavior.answer("transcription"));
+            ResponseEntity<Object> response = switch (format) {
+                case "text", "srt", "vtt" -> ResponseEntity.ok().contentType(MediaType.TEXT_PLAIN).<Object>body(text);
+                default -> ResponseEntity.<Object>ok(Map.of("text", text));
+            };
+            return behavior.firstTokenDelay().thenReturn(response);
+        });
+    }
+
+    private static Map<String, Object> completion(String id, String object, String model, List<?> choices) {
+        var completion = new LinkedHashMap<String, Object>();
+        completion.put("id", id);
+        completion.put("object", object);
+        completion.put("created", Instant.now().getEpochSecond());
+        completion.put("model", model);
+        completion.put("choices", choices);
+        return completion;
+    }
+
+    private static Map<String, Object> chunk(String id, String model, Map<String, ?> delta, String finishReason) {
+        var choice = new HashMap<String, Object>();
+        choice.put("index", 0);
+        choice.put("delta", delta);
+        choice.put("finish_reason", finishReason);
+        return completion(id, "chat.completion.chunk", model, List.of(choice));
+    }
+
+    private static Map<String, Object> usage(int promptTokens, int completionTokens) {
+        return Map.of(
+                "prompt_tokens", promptTokens,
+                "completion_tokens", completionTokens,
+                "total_tokens", promptTokens + completionTokens);
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException exception) {
+            throw new IllegalArgumentException(exception);
+        }
+    }
+
+    private static byte[] silentFrame() {
+        var frame = new byte[417];
+        frame[0] = (byte) 0xFF;
+        frame[1] = (byte) 0xFB;
+        frame[2] = (byte) 0x90;
+        frame[3] = (byte) 0x64;
+        return frame;
+    }
+
+}
@@ -0,0 +1,106 @@
+package pl.training.llmstub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Deterministic answers and configurable latency, token rate and error profile shared by the stubbed APIs. The same
+ * prompt always produces the same answer; prompts asking for JSON get an empty JSON object, so structured output
+ * conversion keeps working.
+ */
+@Component
+public class StubBehavior {
+
+    private static final String[] WORDS = ("spring boot bean context model prompt token vector answer cloud java "
+            + "reactive stream service client request response cache index query document memory advisor").split(" ");
+
+    private final StubProperties properties;
+
+    public StubBehavior(StubProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Completes after the configured latency, or fails with a {@link StubFailureException} as often as configured.
+     */
+    public Mono<Void> firstTokenDelay() {
+        var random = ThreadLocalRandom.current();
+        if (random.nextDouble() < properties.errorRate()) {
+            return Mono.error(new StubFailureException(properties.errorStatus()));
+        }
+        var jitter = properties.latencyJitter().isZero() ? 0 : random.nextLong(properties.latencyJitter().toMillis() + 1);
+        return Mono.delay(properties.latency().plusMillis(jitter)).then();
+    }
+
+    /**
+     * Time needed to generate the given number of tokens at the configured rate.
+     */
+    public Duration generationTime(int tokens) {
+        return Duration.ofNanos((long) (tokens * 1_000_000_000L / properties.tokensPerSecond()));
+    }
+
+    public Flux<String> stream(List<String> tokens) {
+        return Flux.fromIterable(tokens)
+                .delayElements(generationTime(1));
+    }
+
+    public List<String> answer(String prompt) {
+        if (prompt.contains("JSON")) {
+            return List.of("{}");
+        }
+        var random = new Random(prompt.hashCode());
+        var tokens = new ArrayList<String>(properties.answerTokens());
+        for (int index = 0; index < properties.answerTokens(); index++) {
+            var word = WORDS[random.nextInt(WORDS.length)];
+            tokens.add(index == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : " " + word);
+        }
+        tokens.add(".");
+        return tokens;
+    }
+
+    public float[] embedding(String text) {
+        var random = new Random(text.hashCode());
+        var vector = new float[properties.embeddingDimensions()];
+        var norm = 0.0;
+        for (int index = 0; index < vector.length; index++) {
+            vector[index] = (float) random.nextGaussian();
+            norm += vector[index] * vector[index];
+        }
+        var scale = (float) (1 / Math.sqrt(norm));
+        for (int index = 0; index < vector.length; index++) {
+            vector[index] *= scale;
+        }
+        return vector;
+    }
+
+    public static int estimateTokens(String text) {
+        return Math.max(1, text.length() / 4);
+    }
+
+    /**
+     * Joins the text of chat messages whose content is either a string or a list of typed parts.
+     */
+    public static String promptText(JsonNode messages) {
+        var text = new StringBuilder();
+        for (var message : messages) {
+            var content = message.path("content");
+            if (content.isTextual()) {
+                text.append(content.asText()).append('\n');
+            } else {
+                for (var part : content) {
+                    text.append(part.path("text").asText("")).append('\n');
+                }
+            }
+        }
+        return text.toString();
+    }
+
+}
@@ -0,0 +1,18 @@
+package pl.training.llmstub;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+
+@RestControllerAdvice
+public class StubExceptionHandler {
+
+    @ExceptionHandler(StubFailureException.class)
+    public ResponseEntity<Map<String, Object>> onStubFailure(StubFailureException exception) {
+        var error = Map.of("message", exception.getMessage(), "type", "stub_error", "code", exception.getStatus());
+        return ResponseEntity.status(exception.getStatus()).body(Map.of("error", error));
+    }
+
+}
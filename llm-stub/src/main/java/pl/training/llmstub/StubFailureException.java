@@ -0,0 +1,16 @@
+package pl.training.llmstub;
+
+public class StubFailureException extends RuntimeException {
+
+    private final int status;
+
+    public StubFailureException(int status) {
+        super("Stubbed failure");
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+}
@@ -0,0 +1,16 @@
+package pl.training.llmstub;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties("stub")
+public record StubProperties(
+        Duration latency,
+        Duration latencyJitter,
+        double tokensPerSecond,
+        int answerTokens,
+        double errorRate,
+        int errorStatus,
+        int embeddingDimensions) {
+}
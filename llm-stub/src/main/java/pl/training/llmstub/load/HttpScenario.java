@@ -0,0 +1,62 @@
+package pl.training.llmstub.load;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A request of an IntelliJ HTTP Client file ({@code client.http}): requests are separated by lines starting with
+ * {@code ###}, the request line is followed by headers, an empty line and an optional body. Lines starting with a
+ * single {@code #} are comments.
+ */
+public record HttpScenario(String method, URI uri, Map<String, String> headers, String body) {
+
+    public String name() {
+        return method + " " + uri.getPath();
+    }
+
+    public HttpScenario withBase(URI base) {
+        var target = URI.create(base.getScheme() + "://" + base.getAuthority() + uri.getRawPath()
+                + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : ""));
+        return new HttpScenario(method, target, headers, body);
+    }
+
+    public static List<HttpScenario> parse(Path file) throws IOException {
+        var scenarios = new ArrayList<HttpScenario>();
+        var block = new ArrayList<String>();
+        for (var line : Files.readAllLines(file)) {
+            if (line.startsWith("###")) {
+                parseBlock(block, scenarios);
+                block.clear();
+            } else if (!line.startsWith("#")) {
+                block.add(line);
+            }
+        }
+        parseBlock(block, scenarios);
+        return scenarios;
+    }
+
+    private static void parseBlock(List<String> lines, List<HttpScenario> scenarios) {
+        var index = 0;
+        while (index < lines.size() && lines.get(index).isBlank()) {
+            index++;
+        }
+        if (index == lines.size()) {
+            return;
+        }
+        var requestLine = lines.get(index++).trim().split("\\s+");
+        var headers = new LinkedHashMap<String, String>();
+        while (index < lines.size() && !lines.get(index).isBlank()) {
+            var header = lines.get(index++).split(":", 2);
+            headers.put(header[0].trim(), header.length > 1 ? header[1].trim() : "");
+        }
+        var body = String.join("\n", lines.subList(Math.min(index, lines.size()), lines.size())).trim();
+        scenarios.add(new HttpScenario(requestLine[0], URI.create(requestLine[1]), headers, body));
+    }
+
+}
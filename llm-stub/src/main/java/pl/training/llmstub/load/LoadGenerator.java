@@ -0,0 +1,132 @@
+package pl.training.llmstub.load;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Replays the application requests of a {@code client.http} file with a fixed number of concurrent clients and
+ * prints p50/p99 latency and throughput per endpoint. Requests to other hosts (e.g. Ollama itself) are skipped.
+ * Usage: {@code LoadGenerator [--file client.http] [--target http://localhost:8000] [--concurrency 16]
+ * [--duration 60s] [--include regex]}
+ */
+public class LoadGenerator {
+
+    private static final Set<Integer> APPLICATION_PORTS = Set.of(8000, 8080);
+
+    public static void main(String[] args) throws Exception {
+        var options = options(args);
+        var target = URI.create(options.getOrDefault("target", "http://localhost:8000"));
+        var concurrency = Integer.parseInt(options.getOrDefault("concurrency", "16"));
+        var duration = Duration.parse("PT" + options.getOrDefault("duration", "60s").toUpperCase());
+        var include = Pattern.compile(options.getOrDefault("include", ".*"));
+        var scenarios = HttpScenario.parse(Path.of(options.getOrDefault("file", "client.http"))).stream()
+                .filter(scenario -> APPLICATION_PORTS.contains(scenario.uri().getPort()))
+                .filter(scenario -> include.matcher(scenario.name()).find())
+                .map(scenario -> scenario.withBase(target))
+                .toList();
+        if (scenarios.isEmpty()) {
+            System.out.println("No scenarios to run");
+            return;
+        }
+        System.out.printf("Running %d scenarios against %s with %d clients for %s%n", scenarios.size(), target, concurrency, duration);
+
+        var httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        var statistics = new ConcurrentHashMap<String, Statistics>();
+        var next = new AtomicInteger();
+        var deadline = System.nanoTime() + duration.toNanos();
+        var start = System.nanoTime();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int client = 0; client < concurrency; client++) {
+                executor.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        var scenario = scenarios.get(Math.floorMod(next.getAndIncrement(), scenarios.size()));
+                        var endpointStatistics = statistics.computeIfAbsent(scenario.name(), name -> new Statistics());
+                        var requestStart = System.nanoTime();
+                        try {
+                            var response = httpClient.send(toRequest(scenario), HttpResponse.BodyHandlers.discarding());
+                            endpointStatistics.record(System.nanoTime() - requestStart, response.statusCode() < 400);
+                        } catch (Exception exception) {
+                            endpointStatistics.record(System.nanoTime() - requestStart, false);
+                        }
+                    }
+                    return null;
+                });
+            }
+        }
+        report(statistics, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private static HttpRequest toRequest(HttpScenario scenario) {
+        var builder = HttpRequest.newBuilder(scenario.uri())
+                .timeout(Duration.ofMinutes(2))
+                .method(scenario.method(), scenario.body().isEmpty()
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(scenario.body()));
+        scenario.headers().forEach(builder::header);
+        return builder.build();
+    }
+
+    private static void report(Map<String, Statistics> statistics, Duration elapsed) {
+        var seconds = elapsed.toNanos() / 1e9;
+        System.out.printf("%-40s %10s %8s %10s %10s %10s%n", "endpoint", "requests", "errors", "req/s", "p50 [ms]", "p99 [ms]");
+        new TreeMap<>(statistics).forEach((name, endpoint) -> {
+            var latencies = endpoint.sortedLatencies();
+            System.out.printf("%-40s %10d %8d %10.2f %10.1f %10.1f%n", name, latencies.length, endpoint.errors.sum(),
+                    latencies.length / seconds, percentile(latencies, 0.50), percentile(latencies, 0.99));
+        });
+    }
+
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return Double.NaN;
+        }
+        var index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / 1e6;
+    }
+
+    private static Map<String, String> options(String[] args) {
+        var options = new HashMap<String, String>();
+        for (int index = 0; index + 1 < args.length; index += 2) {
+            options.put(args[index].replaceFirst("^--", ""), args[index + 1]);
+        }
+        return options;
+    }
+
+    private static final class Statistics {
+
+        private final LongAdder errors = new LongAdder();
+        private long[] latencies = new long[1024];
+        private int count;
+
+        synchronized void record(long latency, boolean success) {
+            if (!success) {
+                errors.increment();
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latency;
+        }
+
+        synchronized long[] sortedLatencies() {
+            var sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+    }
+
+}
@@ -1,45 +1,296 @@
 package pl.training.ai;
 
-import jakarta.annotation.PostConstruct;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.ChatClientCustomizer;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.ollama.OllamaChatModel;
+import org.springframework.ai.openai.OpenAiAudioSpeechModel;
+import org.springframework.ai.openai.OpenAiAudioTranscriptionModel;
 import org.springframework.ai.openai.OpenAiChatModel;
-import org.springframework.ai.openai.OpenAiEmbeddingModel;
-import org.springframework.ai.reader.ExtractedTextFormatter;
 import org.springframework.ai.reader.TextReader;
-import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
-import org.springframework.ai.reader.pdf.config.PdfDocumentReaderConfig;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
 import org.springframework.ai.transformer.splitter.TokenTextSplitter;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
-import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.*;
 import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.RetryListener;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.training.ai.chat.AiUsageEndpoint;
+import pl.training.ai.chat.BulkheadAdvisor;
+import pl.training.ai.chat.BulkheadProperties;
+import pl.training.ai.chat.CachingPromptGuard;
 import pl.training.ai.chat.ChatController;
+import pl.training.ai.chat.ChatMemoryProperties;
+import pl.training.ai.chat.ChatMetrics;
+import pl.training.ai.chat.ChatMetricsAdvisor;
+import pl.training.ai.chat.ConversationSummarizer;
+import pl.training.ai.chat.ConversationSummaryProperties;
+import pl.training.ai.chat.HeuristicPromptGuard;
+import pl.training.ai.chat.LlmPromptGuard;
+import pl.training.ai.chat.MeteredToolCallingManager;
+import pl.training.ai.chat.ModelRouterProperties;
+import pl.training.ai.chat.PostgresChatMemoryRepository;
 import pl.training.ai.chat.PowerTool;
+import pl.training.ai.chat.PromptGuard;
+import pl.training.ai.chat.PromptGuardProperties;
+import pl.training.ai.chat.PromptLayoutAdvisor;
+import pl.training.ai.chat.RoutingAdvisor;
+import pl.training.ai.chat.RoutingChatModel;
+import pl.training.ai.chat.SemanticCacheAdvisor;
+import pl.training.ai.chat.SemanticCacheProperties;
+import pl.training.ai.chat.TimeToFirstToken;
+import pl.training.ai.chat.TokenWindowChatMemory;
+import pl.training.ai.rag.HnswVectorStore;
+import pl.training.ai.rag.HybridSearchProperties;
+import pl.training.ai.rag.HybridVectorStore;
+import pl.training.ai.rag.IncrementalIndexer;
+import pl.training.ai.rag.IndexedChunks;
+import pl.training.ai.rag.IngestionProperties;
+import pl.training.ai.rag.LocalVectorStore;
+import pl.training.ai.rag.LocalVectorStoreProperties;
+import pl.training.ai.rag.MappedVectorStore;
+import pl.training.ai.multimodel.ArtifactCache;
+import pl.training.ai.multimodel.ArtifactCacheProperties;
+import pl.training.ai.multimodel.ImageDescriber;
+import pl.training.ai.multimodel.ImageDescriptionProperties;
+import pl.training.ai.multimodel.MediaPreparationAdvisor;
+import pl.training.ai.multimodel.MediaPreparationProperties;
+import pl.training.ai.multimodel.SpeechStreamer;
+import pl.training.ai.multimodel.SpeechStreamingProperties;
+import pl.training.ai.multimodel.TranscriptionPipeline;
+import pl.training.ai.multimodel.TranscriptionProperties;
+import pl.training.ai.rag.PdfIngestionPipeline;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Paths;
+import java.util.HashSet;
 import java.util.function.Function;
 
 @Configuration
 public class AIConfiguration {
 
     @Bean
-    public ChatClient openaiChatClient (OpenAiChatModel openAiChatModel) {
-        return ChatClient.create(openAiChatModel);
+    public ChatMetrics chatMetrics(MeterRegistry meterRegistry, RetryTemplate retryTemplate) {
+        var chatMetrics = new ChatMetrics(meterRegistry);
+        retryTemplate.registerListener(new RetryListener() {
+
+            @Override
+            public <T, E extends Throwable> void onError(RetryContext context, RetryCallback<T, E> callback, Throwable throwable) {
+                chatMetrics.retried();
+            }
+
+        });
+        return chatMetrics;
+    }
+
+    @Bean
+    public static BeanPostProcessor meteredToolCallingManagerPostProcessor(ObjectProvider<ChatMetrics> chatMetrics) {
+        return new BeanPostProcessor() {
+
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof ToolCallingManager toolCallingManager
+                        ? new MeteredToolCallingManager(toolCallingManager, chatMetrics.getObject())
+                        : bean;
+            }
+
+        };
+    }
+
+    // applies to ChatClient.Builder instances injected from the auto-configuration, built on the only or primary chat model
+    @Bean
+    public ChatClientCustomizer chatMetricsCustomizer(
+            ChatMetrics chatMetrics,
+            MediaPreparationAdvisor mediaPreparationAdvisor,
+            ObjectProvider<ChatModel> chatModel) {
+        return builder -> builder.defaultAdvisors(mediaPreparationAdvisor,
+                new ChatMetricsAdvisor(provider(chatModel.getIfUnique()), chatMetrics));
+    }
+
+    // OpenAiChatModel is tagged as openai, OllamaChatModel as ollama
+    private static String provider(ChatModel chatModel) {
+        return chatModel == null ? "unknown" : chatModel.getClass().getSimpleName().replace("ChatModel", "").toLowerCase();
+    }
+
+    @Bean
+    public MediaPreparationAdvisor mediaPreparationAdvisor(MeterRegistry meterRegistry, MediaPreparationProperties properties) {
+        return new MediaPreparationAdvisor(properties.maxLongSide(), properties.maxShortSide(), properties.quality(),
+                properties.cache().maximumSize().toBytes(), meterRegistry);
+    }
+
+    @Bean
+    public AiUsageEndpoint aiUsageEndpoint(ChatMetrics chatMetrics) {
+        return new AiUsageEndpoint(chatMetrics);
+    }
+
+    // shared by every client of the OpenAI model, so they all count against one limit
+    @Bean
+    public BulkheadAdvisor openaiBulkheadAdvisor(MeterRegistry meterRegistry, BulkheadProperties bulkheadProperties) {
+        var limit = bulkheadProperties.openai();
+        return new BulkheadAdvisor("openai", limit.maxConcurrentCalls(), limit.maxWait(), meterRegistry);
+    }
+
+    @Bean
+    public ChatClient openaiChatClient (
+            OpenAiChatModel openAiChatModel,
+            MeterRegistry meterRegistry,
+            ChatMetrics chatMetrics,
+            MediaPreparationAdvisor mediaPreparationAdvisor,
+            BulkheadAdvisor openaiBulkheadAdvisor) {
+        return ChatClient.builder(openAiChatModel)
+                .defaultAdvisors(
+                        mediaPreparationAdvisor,
+                        new PromptLayoutAdvisor(meterRegistry),
+                        openaiBulkheadAdvisor,
+                        new ChatMetricsAdvisor("openai", chatMetrics))
+                .build();
+    }
+
+    @Bean
+    public SemanticCacheAdvisor semanticCacheAdvisor(
+            EmbeddingModel embeddingModel,
+            MeterRegistry meterRegistry,
+            SemanticCacheProperties properties) {
+        return new SemanticCacheAdvisor(embeddingModel, properties.endpoints(), properties.similarityThreshold(),
+                properties.maximumSize(), properties.ttl(), meterRegistry);
+    }
+
+    @Bean
+    public ChatClient ollamaChatClient (
+            OllamaChatModel ollamaChatModel,
+            MeterRegistry meterRegistry,
+            ChatMetrics chatMetrics,
+            MediaPreparationAdvisor mediaPreparationAdvisor,
+            BulkheadProperties bulkheadProperties) {
+        var limit = bulkheadProperties.ollama();
+        return ChatClient.builder(ollamaChatModel)
+                .defaultAdvisors(
+                        mediaPreparationAdvisor,
+                        new BulkheadAdvisor("ollama", limit.maxConcurrentCalls(), limit.maxWait(), meterRegistry),
+                        new ChatMetricsAdvisor("ollama", chatMetrics))
+                .build();
+    }
+
+    @Bean
+    public ChatClient routingChatClient(
+            @Qualifier("openaiChatClient") ChatClient openaiChatClient,
+            @Qualifier("ollamaChatClient") ChatClient ollamaChatClient,
+            MeterRegistry meterRegistry,
+            BulkheadProperties bulkheadProperties,
+            ModelRouterProperties properties) {
+        var routingAdvisor = new RoutingAdvisor(
+                new RoutingAdvisor.Provider("ollama", ollamaChatClient, bulkheadProperties.ollama().maxConcurrentCalls()),
+                new RoutingAdvisor.Provider("openai", openaiChatClient, bulkheadProperties.openai().maxConcurrentCalls()),
+                properties.localEndpoints(), properties.remoteEndpoints(), properties.defaultPolicy(),
+                properties.localMaxPromptTokens(), properties.firstChunkTimeout(), properties.maxErrorRate(),
+                properties.cooldown(), meterRegistry);
+        // the model is never called and has no default options, only the options of the caller are forwarded
+        return ChatClient.builder(new RoutingChatModel())
+                .defaultAdvisors(routingAdvisor)
+                .build();
+    }
+
+    @Bean
+    public ArtifactCache artifactCache(MeterRegistry meterRegistry, ArtifactCacheProperties properties) throws IOException {
+        return new ArtifactCache(properties.directory(), properties.maximumSize().toBytes(), meterRegistry);
+    }
+
+    @Bean
+    public ImageDescriber imageDescriber(
+            OpenAiChatModel openAiChatModel,
+            ChatMetrics chatMetrics,
+            MediaPreparationAdvisor mediaPreparationAdvisor,
+            BulkheadAdvisor openaiBulkheadAdvisor,
+            JdbcTemplate jdbcTemplate,
+            Scheduler jdbcScheduler,
+            PromptTemplates promptTemplates,
+            MeterRegistry meterRegistry,
+            ImageDescriptionProperties properties) {
+        // the describer pauses all workers on a transient failure, a retry inside the model would hide it
+        var chatModel = openAiChatModel.mutate()
+                .retryTemplate(RetryTemplate.builder().maxAttempts(1).build())
+                .build();
+        var chatClient = ChatClient.builder(chatModel)
+                .defaultAdvisors(
+                        mediaPreparationAdvisor,
+                        new PromptLayoutAdvisor(meterRegistry),
+                        openaiBulkheadAdvisor,
+                        new ChatMetricsAdvisor("openai", chatMetrics))
+                .build();
+        return new ImageDescriber(chatClient, jdbcTemplate, jdbcScheduler, promptTemplates, properties.concurrency(),
+                properties.maxRetries(), properties.initialBackoff(), properties.maxBackoff(), meterRegistry);
     }
 
     @Bean
-    public ChatClient ollamaChatClient (OllamaChatModel ollamaChatModel) {
-        return ChatClient.create(ollamaChatModel);
+    public TranscriptionPipeline transcriptionPipeline(
+            OpenAiAudioTranscriptionModel openAiAudioTranscriptionModel,
+            MeterRegistry meterRegistry,
+            TranscriptionProperties properties) {
+        return new TranscriptionPipeline(openAiAudioTranscriptionModel, properties.window(), properties.overlap(),
+                properties.concurrency(), meterRegistry);
+    }
+
+    @Bean
+    public SpeechStreamer speechStreamer(
+            OpenAiAudioSpeechModel openAiAudioSpeechModel,
+            MeterRegistry meterRegistry,
+            SpeechStreamingProperties properties) {
+        return new SpeechStreamer(openAiAudioSpeechModel, properties.maxSegmentChars(), properties.concurrency(), meterRegistry);
+    }
+
+    @Bean
+    public PromptTemplates promptTemplates(MeterRegistry meterRegistry, PromptTemplatesProperties properties) throws IOException {
+        return new PromptTemplates(properties.location(), properties.watch(), meterRegistry);
+    }
+
+    @Bean
+    public PromptGuard promptGuard(
+            @Qualifier("openaiChatClient") ChatClient openaiChatClient,
+            @Qualifier("ollamaChatClient") ChatClient ollamaChatClient,
+            @Qualifier("routingChatClient") ChatClient routingChatClient,
+            PromptGuardProperties properties) {
+        PromptGuard promptGuard = switch (properties.mode()) {
+            case "openai" -> new LlmPromptGuard(openaiChatClient);
+            case "ollama" -> new LlmPromptGuard(ollamaChatClient);
+            case "routing" -> new LlmPromptGuard(routingChatClient);
+            case "heuristic" -> new HeuristicPromptGuard();
+            default -> throw new IllegalArgumentException("Unknown prompt guard mode: " + properties.mode());
+        };
+        return new CachingPromptGuard(promptGuard, properties.cache().maximumSize(), properties.cache().ttl());
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler jdbcScheduler(ReactiveProperties properties) {
+        return Schedulers.newBoundedElastic(properties.jdbcThreads(), Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "jdbc");
+    }
+
+    @Bean
+    public TimeToFirstToken timeToFirstToken(MeterRegistry meterRegistry) {
+        return new TimeToFirstToken(meterRegistry);
+    }
+
+    @ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+    @Bean
+    public VirtualThreadPinningMonitor virtualThreadPinningMonitor(MeterRegistry meterRegistry, VirtualThreadsProperties properties) {
+        return new VirtualThreadPinningMonitor(properties.pinningThreshold(), meterRegistry);
     }
 
     /*@Bean
@@ -47,6 +298,30 @@ public class AIConfiguration {
         return ChatClient.create(chatModel);
     }*/
 
+    @Bean
+    public ConversationSummarizer conversationSummarizer(
+            @Qualifier("ollamaChatClient") ChatClient ollamaChatClient,
+            ConversationSummaryProperties properties) {
+        return new ConversationSummarizer(ollamaChatClient, properties.maximumSessions(), properties.idleTimeout(),
+                properties.maximumPendingMessages());
+    }
+
+    @Bean
+    public PostgresChatMemoryRepository chatMemoryRepository(
+            JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry,
+            ChatMemoryProperties properties) {
+        return new PostgresChatMemoryRepository(jdbcTemplate, transactionTemplate, properties.shards(), properties.batchSize(),
+                properties.flushInterval(), properties.queueCapacity(), properties.maxAttempts(),
+                properties.hotConversations(), properties.idleTimeout(), properties.maximumMessages(), meterRegistry);
+    }
+
+    @Bean
+    public ChatMemory chatMemory(PostgresChatMemoryRepository chatMemoryRepository, ChatMemoryProperties properties) {
+        return new TokenWindowChatMemory(chatMemoryRepository, new JTokkitTokenCountEstimator(), properties.maxTokens());
+    }
+
     @Description("Calculates power of two")
     @Bean
     public Function<ChatController.ValueOfDouble, Double> power() {
@@ -60,24 +335,29 @@ public class AIConfiguration {
     private Resource vectorStore;
 
     @Bean
-    public SimpleVectorStore localVectorStore(@Qualifier("openAiEmbeddingModel") EmbeddingModel embeddingModel) throws IOException {
-        var simpleVectorStore = SimpleVectorStore.builder(embeddingModel).build();
-        if (vectorStore.exists()) {
+    public LocalVectorStore localVectorStore(EmbeddingModel embeddingModel, LocalVectorStoreProperties properties)
+            throws IOException {
+        LocalVectorStore localVectorStore = switch (properties.type()) {
+            case "flat" -> new MappedVectorStore(embeddingModel, properties.directory(), "vector-store");
+            case "hnsw" -> new HnswVectorStore(embeddingModel, properties.hnsw(), properties.directory(), "vector-store");
+            default -> throw new IllegalArgumentException("Unknown local vector store type: " + properties.type());
+        };
+        if (localVectorStore.exists()) {
             System.out.println("Loading vector store");
-            simpleVectorStore.load(vectorStore);
-        } else {
-            System.out.println("Creating vector store");
-            var textReader = new TextReader(trainings);
-            textReader.getCustomMetadata().put("filename", "trainings.json");
-            var documents = textReader.get();
-            var textSplitter = new TokenTextSplitter();
-            var splitDocuments = textSplitter.split(documents);
-            simpleVectorStore.add(splitDocuments);
-            var path = Paths.get("src", "main", "resources");
-            var file = path.toFile().getAbsolutePath() + "/vector-store.json";
-            simpleVectorStore.save(new File(file).getAbsoluteFile());
+            localVectorStore.load();
+        } else if (vectorStore.exists()) {
+            System.out.println("Converting vector store");
+            localVectorStore.importJson(vectorStore);
         }
-        return simpleVectorStore;
+        var textReader = new TextReader(trainings);
+        textReader.getCustomMetadata().put("filename", "trainings.json");
+        var documents = textReader.get();
+        var textSplitter = new TokenTextSplitter();
+        var splitDocuments = textSplitter.split(documents);
+        var indexer = new IncrementalIndexer(localVectorStore, source -> localVectorStore.findIds(IncrementalIndexer.SOURCE, source));
+        var result = indexer.reindex("trainings.json", splitDocuments);
+        System.out.println("Indexed trainings.json: " + result);
+        return localVectorStore;
     }
 
     @Autowired
@@ -89,26 +369,38 @@ public class AIConfiguration {
     @Autowired
     private PgVectorStore externalVectorStore;
 
-    /*@PostConstruct
-    public void initVectorStore() {
-        var count = jdbcClient.sql("select count(*) from vector_store")
-                .query(Integer.class)
-                .single();
-        if (count == 0) {
-            System.out.println("Creating pgvector store");
-            var config = PdfDocumentReaderConfig.builder()
-                    .withPageExtractedTextFormatter(new ExtractedTextFormatter.Builder()
-                            .withNumberOfBottomTextLinesToDelete(0)
-                            .withNumberOfTopPagesToSkipBeforeDelete(0)
-                            .build())
-                    .withPagesPerDocument(1)
-                    .build();
-            var pdfReader = new PagePdfDocumentReader(springDoc, config);
-            var textSplitter = new TokenTextSplitter();
-            var documents = textSplitter.apply(pdfReader.get());
-            externalVectorStore.accept(documents);
-        }
-    }*/
+    @Bean
+    public IndexedChunks pgIndexedChunks(JdbcTemplate jdbcTemplate) {
+        return source -> new HashSet<>(jdbcTemplate.queryForList(
+                "select id::text from vector_store where metadata->>'filename' = ?", String.class, source));
+    }
 
+    @Bean
+    public HybridVectorStore hybridVectorStore(
+            PgVectorStore pgVectorStore,
+            JdbcTemplate jdbcTemplate,
+            EmbeddingModel embeddingModel,
+            HybridSearchProperties properties) {
+        return new HybridVectorStore(pgVectorStore, jdbcTemplate, embeddingModel, properties.candidates(),
+                properties.rankConstant(), properties.topK());
+    }
+
+    @Bean
+    public PdfIngestionPipeline pdfIngestionPipeline(
+            JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            EmbeddingModel embeddingModel,
+            IndexedChunks pgIndexedChunks,
+            IngestionProperties properties) {
+        var extractionThreads = Runtime.getRuntime().availableProcessors();
+        return new PdfIngestionPipeline(jdbcTemplate, transactionTemplate, embeddingModel, pgIndexedChunks,
+                extractionThreads, properties.embeddingConcurrency(), properties.batchSize());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "ingestion.enabled", havingValue = "true")
+    public ApplicationRunner springDocIngestion(PdfIngestionPipeline pdfIngestionPipeline) {
+        return arguments -> pdfIngestionPipeline.ingest(springDoc);
+    }
 
 }
@@ -1,12 +1,22 @@
 package pl.training.ai;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
+import pl.training.ai.embedding.BatchingEmbeddingModel;
+import pl.training.ai.embedding.CachingEmbeddingModel;
+import pl.training.ai.embedding.EmbeddingBatchingProperties;
+import pl.training.ai.embedding.EmbeddingCacheProperties;
 
+import java.nio.file.Path;
+
+@ConfigurationPropertiesScan
 @SpringBootApplication
 public class AiApplication {
 
@@ -14,10 +24,28 @@ public class AiApplication {
 		SpringApplication.run(AiApplication.class, args);
 	}
 
+    // close() is inferred as the destroy method, so the dispatcher stops and queued texts are sent on shutdown
+    @Bean
+    public BatchingEmbeddingModel batchingEmbeddingModel(
+            OpenAiEmbeddingModel openAiEmbeddingModel,
+            MeterRegistry meterRegistry,
+            EmbeddingBatchingProperties properties) {
+        return new BatchingEmbeddingModel(openAiEmbeddingModel, properties.maxBatchSize(), properties.minWait(),
+                properties.maxWait(), properties.maxConcurrentBatches(), meterRegistry);
+    }
+
     @Primary
     @Bean
-    public EmbeddingModel defaultEmbeddingModel(OpenAiEmbeddingModel openAiEmbeddingModel) {
-        return openAiEmbeddingModel;
+    public EmbeddingModel defaultEmbeddingModel(
+            BatchingEmbeddingModel batchingEmbeddingModel,
+            MeterRegistry meterRegistry,
+            @Value("${spring.ai.openai.embedding.options.model:text-embedding-ada-002}") String model,
+            @Value("${spring.ai.openai.embedding.options.dimensions:#{null}}") Integer dimensions,
+            EmbeddingCacheProperties properties) {
+        // cache misses of concurrent requests are coalesced into batched remote calls
+        var directory = properties.directory();
+        return new CachingEmbeddingModel(batchingEmbeddingModel, model, dimensions, properties.maximumSize(),
+                properties.ttl(), directory == null || directory.isBlank() ? null : Path.of(directory), meterRegistry);
     }
 
 }
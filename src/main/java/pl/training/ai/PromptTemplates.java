@@ -0,0 +1,120 @@
+package pl.training.ai;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.stringtemplate.v4.ST;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of the {@code *.st} prompt templates from one location. Every template is read and compiled once, a render
+ * copies the compiled prototype instead of parsing the text again. Templates rendered with constant parameters (e.g.
+ * few-shot examples) can be rendered once and reused. When the location is a directory on disk and watching is
+ * enabled, changed files are recompiled on the fly, which is meant for development.
+ */
+public class PromptTemplates implements AutoCloseable {
+
+    private static final String EXTENSION = ".st";
+    private static final char DELIMITER_START = '{';
+    private static final char DELIMITER_STOP = '}';
+
+    private final Map<String, Template> templates = new ConcurrentHashMap<>();
+    private final Map<List<Object>, String> rendered = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private WatchService watchService;
+
+    public PromptTemplates(String location, boolean watch, MeterRegistry meterRegistry) throws IOException {
+        this.meterRegistry = meterRegistry;
+        var resolver = new PathMatchingResourcePatternResolver();
+        for (var resource : resolver.getResources(location + "*" + EXTENSION)) {
+            compile(name(resource.getFilename()), resource.getContentAsString(StandardCharsets.UTF_8));
+        }
+        System.out.println("Compiled prompt templates: " + templates.keySet());
+        var directory = resolver.getResource(location);
+        if (watch) {
+            if (directory.isFile()) {
+                watch(directory.getFile().toPath());
+            } else {
+                System.out.println("Prompt templates in " + location + " are not on the file system, hot reload disabled");
+            }
+        }
+    }
+
+    public String render(String name, Map<String, ?> params) {
+        var template = templates.get(name);
+        if (template == null) {
+            throw new IllegalArgumentException("Unknown prompt template: " + name);
+        }
+        var start = System.nanoTime();
+        var instance = new ST(template.prototype());
+        params.forEach(instance::add);
+        var text = instance.render();
+        template.timer().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return text;
+    }
+
+    /**
+     * Renders the template on first use only, the parameters are expected to be constants.
+     */
+    public String renderOnce(String name, Map<String, ?> params) {
+        return rendered.computeIfAbsent(List.of(name, params), key -> render(name, params));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void compile(String name, String text) {
+        var timer = meterRegistry.timer("prompt.template.render", "template", name);
+        templates.put(name, new Template(new ST(text, DELIMITER_START, DELIMITER_STOP), timer));
+    }
+
+    private void watch(Path directory) throws IOException {
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread.ofPlatform()
+                .name("prompt-templates-watcher")
+                .daemon()
+                .start(() -> reload(directory));
+    }
+
+    private void reload(Path directory) {
+        try {
+            while (true) {
+                var key = watchService.take();
+                for (var event : key.pollEvents()) {
+                    if (event.context() instanceof Path file && file.toString().endsWith(EXTENSION)) {
+                        try {
+                            compile(name(file.toString()), Files.readString(directory.resolve(file)));
+                            rendered.clear();
+                            System.out.println("Reloaded prompt template: " + file);
+                        } catch (IOException exception) {
+                            System.out.println("Reloading prompt template " + file + " failed: " + exception.getMessage());
+                        }
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException exception) {
+            // closed on shutdown
+        }
+    }
+
+    private static String name(String filename) {
+        return filename.substring(0, filename.length() - EXTENSION.length());
+    }
+
+    private record Template(ST prototype, Timer timer) {
+    }
+
+}
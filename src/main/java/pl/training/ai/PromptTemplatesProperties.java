@@ -0,0 +1,10 @@
+package pl.training.ai;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of {@link PromptTemplates}, bound from {@code prompt-templates}.
+ */
+@ConfigurationProperties("prompt-templates")
+public record PromptTemplatesProperties(String location, boolean watch) {
+}
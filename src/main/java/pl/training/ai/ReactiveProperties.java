@@ -0,0 +1,10 @@
+package pl.training.ai;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of the reactive endpoints, bound from {@code reactive}.
+ */
+@ConfigurationProperties("reactive")
+public record ReactiveProperties(int jdbcThreads) {
+}
@@ -0,0 +1,58 @@
+package pl.training.ai;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Streams {@code jdk.VirtualThreadPinned} JFR events and reports virtual threads that stayed pinned to their carrier
+ * longer than the threshold. Pinning inside the HTTP clients used by Spring AI is counted separately, since it blocks
+ * a carrier for the whole model round-trip.
+ */
+public class VirtualThreadPinningMonitor implements AutoCloseable {
+
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+    private static final int REPORTED_FRAMES = 12;
+
+    private final RecordingStream recordingStream = new RecordingStream();
+    private final MeterRegistry meterRegistry;
+
+    public VirtualThreadPinningMonitor(Duration threshold, MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        recordingStream.enable(EVENT).withThreshold(threshold).withStackTrace();
+        recordingStream.onEvent(EVENT, this::report);
+        recordingStream.startAsync();
+    }
+
+    @Override
+    public void close() {
+        recordingStream.close();
+    }
+
+    private void report(RecordedEvent event) {
+        var frames = event.getStackTrace() != null ? event.getStackTrace().getFrames() : List.<RecordedFrame>of();
+        var source = frames.stream().anyMatch(VirtualThreadPinningMonitor::isHttpClientFrame) ? "http-client" : "other";
+        meterRegistry.counter("jvm.threads.virtual.pinned", "source", source).increment();
+        var stackTrace = frames.stream()
+                .limit(REPORTED_FRAMES)
+                .map(frame -> "\tat " + frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                        + ":" + frame.getLineNumber())
+                .collect(Collectors.joining("\n"));
+        System.out.printf("Virtual thread pinned for %d ms (%s)%n%s%n", event.getDuration().toMillis(), source, stackTrace);
+    }
+
+    private static boolean isHttpClientFrame(RecordedFrame frame) {
+        var type = frame.getMethod().getType().getName();
+        return type.startsWith("org.springframework.ai.")
+                || type.startsWith("org.springframework.web.client.")
+                || type.startsWith("org.springframework.http.client.")
+                || type.startsWith("jdk.internal.net.http.")
+                || type.startsWith("sun.net.www.");
+    }
+
+}
@@ -0,0 +1,12 @@
+package pl.training.ai;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of {@link VirtualThreadPinningMonitor}, bound from {@code virtual-threads}.
+ */
+@ConfigurationProperties("virtual-threads")
+public record VirtualThreadsProperties(Duration pinningThreshold) {
+}
@@ -0,0 +1,16 @@
+package pl.training.ai.chat;
+
+/**
+ * Advisor parameters shared by the advisors of this package.
+ */
+public final class AdvisorParams {
+
+    /**
+     * Name of the endpoint a call belongs to, selects the semantically cached endpoints and tags per-endpoint metrics.
+     */
+    public static final String ENDPOINT = "chat.endpoint";
+
+    private AdvisorParams() {
+    }
+
+}
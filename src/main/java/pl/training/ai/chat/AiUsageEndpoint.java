@@ -0,0 +1,25 @@
+package pl.training.ai.chat;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.List;
+
+/**
+ * Actuator endpoint ({@code /actuator/ai-usage}) summarizing {@link ChatMetrics} per provider, endpoint and model.
+ */
+@Endpoint(id = "ai-usage")
+public class AiUsageEndpoint {
+
+    private final ChatMetrics chatMetrics;
+
+    public AiUsageEndpoint(ChatMetrics chatMetrics) {
+        this.chatMetrics = chatMetrics;
+    }
+
+    @ReadOperation
+    public List<ChatMetrics.Usage> usage() {
+        return chatMetrics.usage();
+    }
+
+}
@@ -0,0 +1,185 @@
+package pl.training.ai.chat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of concurrent model calls of one provider. Callers over the limit wait in a fair queue for up to
+ * {@code maxWait} and get {@code 503 Service Unavailable} only when no permit frees up in time. Blocking calls wait on
+ * their own thread, streamed calls wait for the permit without holding any thread.
+ */
+public class BulkheadAdvisor implements CallAdvisor, StreamAdvisor {
+
+    private final String provider;
+    private final Duration maxWait;
+    private final Timer waitTimer;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<CompletableFuture<Boolean>> waiters = new ArrayDeque<>();
+    private int available;
+
+    public BulkheadAdvisor(String provider, int maxConcurrentCalls, Duration maxWait, MeterRegistry meterRegistry) {
+        this.provider = provider;
+        this.available = maxConcurrentCalls;
+        this.maxWait = maxWait;
+        this.waitTimer = meterRegistry.timer("chat.bulkhead.wait", "provider", provider);
+        meterRegistry.gauge("chat.bulkhead.available", Tags.of("provider", provider), this, BulkheadAdvisor::available);
+        meterRegistry.gauge("chat.bulkhead.queued", Tags.of("provider", provider), this, BulkheadAdvisor::queued);
+    }
+
+    @Override
+    public String getName() {
+        return BulkheadAdvisor.class.getSimpleName() + "-" + provider;
+    }
+
+    @Override
+    public int getOrder() {
+        // right before the model call, so cache hits and retrieval do not hold a permit
+        return Ordered.LOWEST_PRECEDENCE - 100;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain callAdvisorChain) {
+        acquire();
+        try {
+            return callAdvisorChain.nextCall(chatClientRequest);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain streamAdvisorChain) {
+        return Flux.usingWhen(
+                acquireLater(),
+                permit -> streamAdvisorChain.nextStream(chatClientRequest),
+                permit -> Mono.fromRunnable(this::release));
+    }
+
+    private void acquire() {
+        var start = System.nanoTime();
+        var waiter = request();
+        try {
+            waiter.get(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException exception) {
+            abandon(waiter);
+            throw unavailable();
+        } catch (InterruptedException exception) {
+            abandon(waiter);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a " + provider + " call", exception);
+        } catch (ExecutionException exception) {
+            throw new IllegalStateException(exception.getCause());
+        } finally {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // the permit is handed over by release(), so a waiting stream needs no thread, only a timer for the timeout
+    private Mono<Boolean> acquireLater() {
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            var waiter = request();
+            return Mono.fromFuture(waiter, true)
+                    .timeout(maxWait)
+                    .onErrorMap(TimeoutException.class, exception -> {
+                        abandon(waiter);
+                        return unavailable();
+                    })
+                    .doOnCancel(() -> abandon(waiter))
+                    .doFinally(signal -> waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private CompletableFuture<Boolean> request() {
+        lock.lock();
+        try {
+            if (available > 0 && waiters.isEmpty()) {
+                available--;
+                return CompletableFuture.completedFuture(true);
+            }
+            var waiter = new CompletableFuture<Boolean>();
+            waiters.add(waiter);
+            return waiter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // hands the permit to the longest waiting caller, skipping the ones that gave up in the meantime
+    private void release() {
+        while (true) {
+            CompletableFuture<Boolean> waiter;
+            lock.lock();
+            try {
+                waiter = waiters.poll();
+                if (waiter == null) {
+                    available++;
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (waiter.complete(true)) {
+                return;
+            }
+        }
+    }
+
+    // a waiter that got its permit right before giving up passes it on
+    private void abandon(CompletableFuture<Boolean> waiter) {
+        if (waiter.cancel(false)) {
+            lock.lock();
+            try {
+                waiters.remove(waiter);
+            } finally {
+                lock.unlock();
+            }
+        } else {
+            release();
+        }
+    }
+
+    private ResponseStatusException unavailable() {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many concurrent " + provider + " calls, retry later");
+    }
+
+    private double available() {
+        lock.lock();
+        try {
+            return available;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private double queued() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
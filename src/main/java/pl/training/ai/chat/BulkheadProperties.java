@@ -0,0 +1,16 @@
+package pl.training.ai.chat;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of the {@link BulkheadAdvisor} of each provider, bound from {@code bulkhead}.
+ */
+@ConfigurationProperties("bulkhead")
+public record BulkheadProperties(Limit openai, Limit ollama) {
+
+    public record Limit(int maxConcurrentCalls, Duration maxWait) {
+    }
+
+}
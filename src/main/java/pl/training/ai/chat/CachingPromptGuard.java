@@ -0,0 +1,30 @@
+package pl.training.ai.chat;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import pl.training.ai.Hashes;
+
+import java.time.Duration;
+
+/**
+ * Caches verdicts of another guard by the hash of the input.
+ */
+public class CachingPromptGuard implements PromptGuard {
+
+    private final PromptGuard delegate;
+    private final Cache<String, Boolean> verdicts;
+
+    public CachingPromptGuard(PromptGuard delegate, long maximumSize, Duration ttl) {
+        this.delegate = delegate;
+        this.verdicts = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    @Override
+    public boolean isSafe(String input) {
+        return verdicts.get(Hashes.sha256(input), key -> delegate.isSafe(input));
+    }
+
+}
@@ -5,36 +5,33 @@ import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.AssistantMessage;
-import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.PromptTemplate;
-import org.springframework.ai.chat.prompt.SystemPromptTemplate;
 import org.springframework.ai.converter.MapOutputConverter;
 import org.springframework.ai.ollama.OllamaChatModel;
-import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.support.ToolCallbacks;
 import org.springframework.ai.tool.function.FunctionToolCallback;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.core.io.Resource;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import pl.training.ai.PromptTemplates;
 import reactor.core.publisher.Flux;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 @RestController
 public class ChatController {
 
     private final ChatClient chatClient;
-    private final Map<String, ChatClient> chatClients;
+    private final ConversationSummarizer conversationSummarizer;
+    private final TimeToFirstToken timeToFirstToken;
+    private final PromptTemplates promptTemplates;
 
     /*public ChatController(ChatClient.Builder chatClientBuilder) {
         this.chatClient = chatClientBuilder.build();
@@ -46,14 +43,19 @@ public class ChatController {
         this.chatClients = chatClients;
     }*/
 
-    public ChatController(OpenAiChatModel chatModel,
-                          Map<String, ChatClient> chatClients,
-                          ChatMemory chatMemory) {
-        this.chatClient = ChatClient.builder(chatModel)
-                .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build())
+    public ChatController(@Qualifier("openaiChatClient") ChatClient chatClient,
+                          ConversationSummarizer conversationSummarizer,
+                          ChatMemory chatMemory,
+                          SemanticCacheAdvisor semanticCacheAdvisor,
+                          TimeToFirstToken timeToFirstToken,
+                          PromptTemplates promptTemplates) {
+        this.chatClient = chatClient.mutate()
+                .defaultAdvisors(MessageChatMemoryAdvisor.builder(chatMemory).build(), semanticCacheAdvisor)
                 //.defaultToolCallbacks(ToolCallbacks.from(new DateTimeTools()))
                 .build();
-        this.chatClients = chatClients;
+        this.conversationSummarizer = conversationSummarizer;
+        this.timeToFirstToken = timeToFirstToken;
+        this.promptTemplates = promptTemplates;
     }
 
     @PostMapping("chat")
@@ -71,6 +73,7 @@ public class ChatController {
                         .text("Tell me a joke about {topic}")
                         .param("topic", topic)
                 )
+                .advisors(advisor -> advisor.param(AdvisorParams.ENDPOINT, "jokes"))
                 .call()
                 .content();
     }
@@ -81,12 +84,10 @@ public class ChatController {
                 .user("I am visiting Poland can you give me 10 places I must visit")
                 .stream()
                 .content()
+                .transform(timeToFirstToken.of("tourist-attractions"))
                 .map(text -> text.toLowerCase(Locale.ROOT));
     }
 
-    @Value("classpath:prompts/dev-assistant.st")
-    private Resource devAssistantSystemMessage;
-
     // A system message in LLMs is a special type of input that provides high-level instructions, context, or behavioral
     // guidelines to the model before it processes user queries. Think of it as the "behind-the-scenes"
     // instructions that shape how the AI should respond.
@@ -107,8 +108,7 @@ public class ChatController {
 
         Map<String, Object> params = Map.of("programming_language", programmingLanguage);
         var userMessage = new UserMessage(promptRequest.message());
-        var systemMessageTemplate = new SystemPromptTemplate(devAssistantSystemMessage);
-        var systemMessage = systemMessageTemplate.createMessage(params);
+        var systemMessage = new SystemMessage(promptTemplates.render("dev-assistant", params));
         var prompt = new Prompt(List.of(systemMessage, userMessage));
 
         return chatClient
@@ -120,57 +120,36 @@ public class ChatController {
                         .params(params)
                 )*/
                 .stream()
-                .content();
+                .content()
+                .transform(timeToFirstToken.of("dev-assistant"));
     }
 
-    private final List<Message> messages = Collections.synchronizedList(new ArrayList<>());
-
     @PostMapping("conversation")
-    public String conversation(@RequestBody PromptRequest promptRequest) {
+    public String conversation(
+            @RequestBody PromptRequest promptRequest,
+            @RequestParam(defaultValue = ChatMemory.DEFAULT_CONVERSATION_ID) String conversationId) {
         /*var prompts = new Prompt(List.of(
                 new UserMessage("Hi my name is Luc"),
                 new AssistantMessage("Nice to meet you!"),
                 new UserMessage(promptRequest.message())
         ));*/
-        var summary = getMessagesSummary();
-        messages.add(new UserMessage(promptRequest.message()));
+        var summary = conversationSummarizer.summary(conversationId);
         System.out.println("###################");
         System.out.println(summary);
         System.out.println("###################");
         var response = chatClient
-                //.prompt(new Prompt(messages))
                 .prompt()
                 .system(summary)
                 .user(promptRequest.message())
+                .advisors(advisor -> advisor.param(ChatMemory.CONVERSATION_ID, conversationId))
                 .call()
                 .content();
         if (response != null) {
-            messages.add(new AssistantMessage(response));
+            conversationSummarizer.append(conversationId, new UserMessage(promptRequest.message()), new AssistantMessage(response));
         }
         return response;
     }
 
-    private String getMessagesSummary() {
-        var text = messages.stream()
-                .map(Message::getText)
-                .collect(Collectors.joining());
-        System.out.println("Text: " + text);
-        if (text.isBlank()) {
-            return "-";
-        }
-        return chatClients.get("ollamaChatClient")
-                .prompt()
-                .user(spec -> spec
-                        .text("""
-                                Summarize only the information explicitly stated in the source text, without adding 
-                                any external details or interpretations. Present the most important facts in no more than 10 concise 
-                                sentences. Source text: {text}""")
-                        .param("text", text)
-                )
-                .call()
-                .content();
-    }
-
     @PostMapping("stateful-conversation")
     public String statefulConversation(@RequestBody PromptRequest promptRequest) {
        return chatClient
@@ -248,7 +227,8 @@ public class ChatController {
                 .toolNames("power")
                 .toolContext(Map.of("userId", "1234"))
                 .stream()
-                .content();
+                .content()
+                .transform(timeToFirstToken.of("tools"));
     }
 
 }
@@ -0,0 +1,13 @@
+package pl.training.ai.chat;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of {@link PostgresChatMemoryRepository} and {@link TokenWindowChatMemory}, bound from {@code chat-memory}.
+ */
+@ConfigurationProperties("chat-memory")
+public record ChatMemoryProperties(int maxTokens, int shards, int batchSize, Duration flushInterval, int queueCapacity,
+                                   int maxAttempts, long hotConversations, Duration idleTimeout, int maximumMessages) {
+}
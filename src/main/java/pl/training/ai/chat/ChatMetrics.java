@@ -0,0 +1,175 @@
+package pl.training.ai.chat;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token and latency histograms of model calls, tagged by provider, endpoint and model, latencies also by outcome.
+ * Meters are resolved once per tag combination and reused, so a streamed chunk costs only a clock read and a histogram
+ * update. Retries and tool calls happen inside the model and are attributed to the blocking call running on the
+ * current thread; the tools of a streamed call run on another thread, so the call reaches them through the tool
+ * context instead. Streamed calls are not retried by the model.
+ */
+public class ChatMetrics {
+
+    static final String UNKNOWN = "unknown";
+    static final String CALL_KEY = ChatMetrics.class.getName() + ".call";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Tags, Meters> meters = new ConcurrentHashMap<>();
+    private final ThreadLocal<Call> currentCall = new ThreadLocal<>();
+
+    public ChatMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void retried() {
+        var call = currentCall.get();
+        if (call != null) {
+            call.retries++;
+        } else {
+            unknown().retries.record(1);
+        }
+    }
+
+    public void toolsCalled(Prompt prompt, int count) {
+        var call = prompt.getOptions() instanceof ToolCallingChatOptions options && options.getToolContext() != null
+                && options.getToolContext().get(CALL_KEY) instanceof Call streamed ? streamed : currentCall.get();
+        if (call != null) {
+            call.toolCalls += count;
+        } else {
+            unknown().toolCalls.record(count);
+        }
+    }
+
+    public List<Usage> usage() {
+        return meters.values().stream()
+                .map(Meters::usage)
+                .sorted(Comparator.comparing(Usage::provider).thenComparing(Usage::endpoint).thenComparing(Usage::model))
+                .toList();
+    }
+
+    Meters meters(String provider, String endpoint, String model) {
+        var tags = Tags.of("provider", provider, "endpoint", endpoint, "model", model);
+        return meters.computeIfAbsent(tags, key -> new Meters(key, meterRegistry));
+    }
+
+    Call begin() {
+        var call = new Call(currentCall.get());
+        currentCall.set(call);
+        return call;
+    }
+
+    // not bound to the current thread
+    Call detached() {
+        return new Call(null);
+    }
+
+    void end(Call call) {
+        if (call.previous != null) {
+            currentCall.set(call.previous);
+        } else {
+            currentCall.remove();
+        }
+    }
+
+    private Meters unknown() {
+        return meters(UNKNOWN, UNKNOWN, UNKNOWN);
+    }
+
+    public record Usage(String provider, String endpoint, String model, long calls, double promptTokens,
+                        double completionTokens, double toolCalls, double retries, double meanLatencyMs,
+                        double maxLatencyMs, double meanTimeToFirstTokenMs, double meanInterTokenLatencyMs) {
+    }
+
+    enum Outcome {
+
+        SUCCESS, ERROR, CANCELLED
+
+    }
+
+    static final class Call {
+
+        private final Call previous;
+        // the tools of a stream are counted on another thread
+        volatile int retries;
+        volatile int toolCalls;
+
+        private Call(Call previous) {
+            this.previous = previous;
+        }
+
+    }
+
+    static final class Meters {
+
+        private final Tags tags;
+        final DistributionSummary promptTokens;
+        final DistributionSummary completionTokens;
+        final DistributionSummary toolCalls;
+        final DistributionSummary retries;
+        private final Map<Outcome, Timer> latency = new EnumMap<>(Outcome.class);
+        final Timer timeToFirstToken;
+        final Timer interTokenLatency;
+
+        private Meters(Tags tags, MeterRegistry meterRegistry) {
+            this.tags = tags;
+            promptTokens = summary("chat.model.tokens", Tags.of("type", "prompt"), meterRegistry);
+            completionTokens = summary("chat.model.tokens", Tags.of("type", "completion"), meterRegistry);
+            toolCalls = summary("chat.model.tool.calls", Tags.empty(), meterRegistry);
+            retries = summary("chat.model.retries", Tags.empty(), meterRegistry);
+            for (var outcome : Outcome.values()) {
+                latency.put(outcome, timer("chat.model.latency", Tags.of("outcome", outcome.name().toLowerCase()), meterRegistry));
+            }
+            timeToFirstToken = timer("chat.model.ttft", Tags.empty(), meterRegistry);
+            interTokenLatency = timer("chat.model.inter.token.latency", Tags.empty(), meterRegistry);
+        }
+
+        private DistributionSummary summary(String name, Tags extraTags, MeterRegistry meterRegistry) {
+            return DistributionSummary.builder(name)
+                    .tags(tags.and(extraTags))
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+
+        Timer latency(Outcome outcome) {
+            return latency.get(outcome);
+        }
+
+        private Timer timer(String name, Tags extraTags, MeterRegistry meterRegistry) {
+            return Timer.builder(name)
+                    .tags(tags.and(extraTags))
+                    .publishPercentiles(0.5, 0.99)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+
+        // calls of every outcome
+        private Usage usage() {
+            var calls = latency.values().stream().mapToLong(Timer::count).sum();
+            var totalLatencyMs = latency.values().stream().mapToDouble(timer -> timer.totalTime(TimeUnit.MILLISECONDS)).sum();
+            var maxLatencyMs = latency.values().stream().mapToDouble(timer -> timer.max(TimeUnit.MILLISECONDS)).max().orElse(0);
+            return new Usage(tag("provider"), tag("endpoint"), tag("model"), calls,
+                    promptTokens.totalAmount(), completionTokens.totalAmount(), toolCalls.totalAmount(),
+                    retries.totalAmount(), calls == 0 ? 0 : totalLatencyMs / calls, maxLatencyMs,
+                    timeToFirstToken.mean(TimeUnit.MILLISECONDS), interTokenLatency.mean(TimeUnit.MILLISECONDS));
+        }
+
+        private String tag(String key) {
+            return tags.stream().filter(tag -> tag.getKey().equals(key)).findFirst().orElseThrow().getValue();
+        }
+
+    }
+
+}
@@ -0,0 +1,186 @@
+package pl.training.ai.chat;
+
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.core.Ordered;
+import pl.training.ai.chat.ChatMetrics.Outcome;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records {@link ChatMetrics} of every call of the client it is registered on: prompt and completion tokens, total
+ * latency by outcome and, for streams, time to first token and the latency between tokens.
+ */
+public class ChatMetricsAdvisor implements CallAdvisor, StreamAdvisor {
+
+    private final String provider;
+    private final ChatMetrics chatMetrics;
+
+    public ChatMetricsAdvisor(String provider, ChatMetrics chatMetrics) {
+        this.provider = provider;
+        this.chatMetrics = chatMetrics;
+    }
+
+    @Override
+    public String getName() {
+        return ChatMetricsAdvisor.class.getSimpleName() + "-" + provider;
+    }
+
+    @Override
+    public int getOrder() {
+        // inside the bulkhead, so the latency covers the model only and not the wait for a permit
+        return Ordered.LOWEST_PRECEDENCE - 50;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain callAdvisorChain) {
+        var start = System.nanoTime();
+        var call = chatMetrics.begin();
+        try {
+            var response = callAdvisorChain.nextCall(chatClientRequest);
+            var meters = meters(chatClientRequest, response.chatResponse());
+            recordCall(meters, Outcome.SUCCESS, start, call);
+            recordUsage(meters, response.chatResponse());
+            return response;
+        } catch (RuntimeException exception) {
+            recordCall(meters(chatClientRequest, null), Outcome.ERROR, start, call);
+            throw exception;
+        } finally {
+            chatMetrics.end(call);
+        }
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain streamAdvisorChain) {
+        return Flux.defer(() -> {
+            var call = chatMetrics.detached();
+            var stream = new StreamMetrics(chatClientRequest, call);
+            return streamAdvisorChain.nextStream(withCall(chatClientRequest, call))
+                    .doOnNext(stream::onNext)
+                    .doFinally(stream::onFinally);
+        });
+    }
+
+    // the tools of a stream are called on another thread, the call reaches them through the tool context
+    private static ChatClientRequest withCall(ChatClientRequest chatClientRequest, ChatMetrics.Call call) {
+        if (!(chatClientRequest.prompt().getOptions() instanceof ToolCallingChatOptions options)) {
+            return chatClientRequest;
+        }
+        ToolCallingChatOptions copy = options.copy();
+        var toolContext = new HashMap<String, Object>();
+        if (copy.getToolContext() != null) {
+            toolContext.putAll(copy.getToolContext());
+        }
+        toolContext.put(ChatMetrics.CALL_KEY, call);
+        copy.setToolContext(toolContext);
+        return chatClientRequest.mutate()
+                .prompt(chatClientRequest.prompt().mutate().chatOptions(copy).build())
+                .build();
+    }
+
+    private static void recordCall(ChatMetrics.Meters meters, Outcome outcome, long start, ChatMetrics.Call call) {
+        meters.latency(outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        meters.toolCalls.record(call.toolCalls);
+        meters.retries.record(call.retries);
+    }
+
+    private ChatMetrics.Meters meters(ChatClientRequest chatClientRequest, ChatResponse chatResponse) {
+        var endpoint = chatClientRequest.context().get(AdvisorParams.ENDPOINT) instanceof String name ? name : ChatMetrics.UNKNOWN;
+        return chatMetrics.meters(provider, endpoint, model(chatClientRequest, chatResponse));
+    }
+
+    private static String model(ChatClientRequest chatClientRequest, ChatResponse chatResponse) {
+        var options = chatClientRequest.prompt().getOptions();
+        if (options != null && options.getModel() != null) {
+            return options.getModel();
+        }
+        if (chatResponse != null && chatResponse.getMetadata().getModel() != null && !chatResponse.getMetadata().getModel().isEmpty()) {
+            return chatResponse.getMetadata().getModel();
+        }
+        return ChatMetrics.UNKNOWN;
+    }
+
+    private static void recordUsage(ChatMetrics.Meters meters, ChatResponse chatResponse) {
+        var usage = usage(chatResponse);
+        if (usage != null) {
+            meters.promptTokens.record(usage.getPromptTokens() != null ? usage.getPromptTokens() : 0);
+            meters.completionTokens.record(usage.getCompletionTokens() != null ? usage.getCompletionTokens() : 0);
+        }
+    }
+
+    private static Usage usage(ChatResponse chatResponse) {
+        if (chatResponse == null || chatResponse.getMetadata().getUsage() == null) {
+            return null;
+        }
+        var usage = chatResponse.getMetadata().getUsage();
+        return usage.getTotalTokens() != null && usage.getTotalTokens() > 0 ? usage : null;
+    }
+
+    private static boolean hasText(ChatResponse chatResponse) {
+        return chatResponse != null
+                && chatResponse.getResult() != null
+                && chatResponse.getResult().getOutput().getText() != null
+                && !chatResponse.getResult().getOutput().getText().isEmpty();
+    }
+
+    // Meters are resolved on the first chunk, when the model is known; only chunks carrying text count as tokens
+    private final class StreamMetrics {
+
+        private final ChatClientRequest chatClientRequest;
+        private final ChatMetrics.Call call;
+        private final long start = System.nanoTime();
+        private long lastToken;
+        private ChatMetrics.Meters meters;
+        private ChatResponse usageResponse;
+
+        StreamMetrics(ChatClientRequest chatClientRequest, ChatMetrics.Call call) {
+            this.chatClientRequest = chatClientRequest;
+            this.call = call;
+        }
+
+        void onNext(ChatClientResponse response) {
+            var chatResponse = response.chatResponse();
+            if (meters == null) {
+                meters = meters(chatClientRequest, chatResponse);
+            }
+            if (usage(chatResponse) != null) {
+                usageResponse = chatResponse;
+            }
+            if (hasText(chatResponse)) {
+                var now = System.nanoTime();
+                if (lastToken == 0) {
+                    meters.timeToFirstToken.record(now - start, TimeUnit.NANOSECONDS);
+                } else {
+                    meters.interTokenLatency.record(now - lastToken, TimeUnit.NANOSECONDS);
+                }
+                lastToken = now;
+            }
+        }
+
+        // a failed or cancelled stream is recorded as well, with the usage it reported so far
+        void onFinally(SignalType signal) {
+            if (meters == null) {
+                meters = meters(chatClientRequest, null);
+            }
+            var outcome = switch (signal) {
+                case ON_COMPLETE -> Outcome.SUCCESS;
+                case ON_ERROR -> Outcome.ERROR;
+                default -> Outcome.CANCELLED;
+            };
+            recordCall(meters, outcome, start, call);
+            recordUsage(meters, usageResponse);
+        }
+
+    }
+
+}
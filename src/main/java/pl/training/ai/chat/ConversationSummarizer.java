@@ -0,0 +1,108 @@
+package pl.training.ai.chat;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.Message;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a rolling summary per conversation. New turns are queued and folded into the previous summary in the
+ * background, so a request only reads the latest summary and never waits for the summarizing model. Each session
+ * holds at most {@code maximumPendingMessages} unsummarized messages and idle sessions are evicted.
+ */
+public class ConversationSummarizer {
+
+    private static final String EMPTY_SUMMARY = "-";
+    private static final String FOLD_PROMPT = """
+            Update the summary of a conversation with the new messages. Keep only the information explicitly stated,
+            without adding any external details or interpretations. Present the most important facts in no more than
+            10 concise sentences.
+            Current summary: {summary}
+            New messages: {messages}""";
+
+    private final ChatClient chatClient;
+    private final int maximumPendingMessages;
+    private final Cache<String, Session> sessions;
+    private final Executor executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public ConversationSummarizer(ChatClient chatClient, long maximumSessions, Duration idleTimeout, int maximumPendingMessages) {
+        this.chatClient = chatClient;
+        this.maximumPendingMessages = maximumPendingMessages;
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(maximumSessions)
+                .expireAfterAccess(idleTimeout)
+                .build();
+    }
+
+    public String summary(String conversationId) {
+        var session = sessions.getIfPresent(conversationId);
+        return session != null ? session.summary : EMPTY_SUMMARY;
+    }
+
+    public void append(String conversationId, Message... messages) {
+        var session = sessions.get(conversationId, id -> new Session());
+        synchronized (session) {
+            for (var message : messages) {
+                if (session.pending.size() == maximumPendingMessages) {
+                    session.pending.removeFirst();
+                }
+                session.pending.addLast(message);
+            }
+            if (session.folding) {
+                return;
+            }
+            session.folding = true;
+        }
+        executor.execute(() -> fold(conversationId, session));
+    }
+
+    private void fold(String conversationId, Session session) {
+        while (true) {
+            List<Message> messages;
+            synchronized (session) {
+                if (session.pending.isEmpty()) {
+                    session.folding = false;
+                    return;
+                }
+                messages = new ArrayList<>(session.pending);
+                session.pending.clear();
+            }
+            try {
+                var text = messages.stream()
+                        .map(message -> message.getMessageType().getValue() + ": " + message.getText())
+                        .collect(Collectors.joining("\n"));
+                var summary = chatClient.prompt()
+                        .user(spec -> spec
+                                .text(FOLD_PROMPT)
+                                .param("summary", session.summary)
+                                .param("messages", text)
+                        )
+                        .call()
+                        .content();
+                if (summary != null && !summary.isBlank()) {
+                    session.summary = summary;
+                }
+            } catch (RuntimeException exception) {
+                System.out.println("Summarizing conversation " + conversationId + " failed: " + exception.getMessage());
+            }
+        }
+    }
+
+    private static final class Session {
+
+        private final Deque<Message> pending = new ArrayDeque<>();
+        private volatile String summary = EMPTY_SUMMARY;
+        private boolean folding;
+
+    }
+
+}
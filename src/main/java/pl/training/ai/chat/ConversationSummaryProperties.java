@@ -0,0 +1,12 @@
+package pl.training.ai.chat;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of {@link ConversationSummarizer}, bound from {@code conversation-summary}.
+ */
+@ConfigurationProperties("conversation-summary")
+public record ConversationSummaryProperties(long maximumSessions, Duration idleTimeout, int maximumPendingMessages) {
+}
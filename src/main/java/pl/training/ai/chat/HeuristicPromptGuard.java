@@ -0,0 +1,24 @@
+package pl.training.ai.chat;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * In-process guard flagging inputs that contain typical injection phrases. Cheap enough to run on every request,
+ * at the cost of missing paraphrased attacks.
+ */
+public class HeuristicPromptGuard implements PromptGuard {
+
+    static final List<Pattern> INJECTION_PATTERNS = List.of(
+            Pattern.compile("(?i)ignore (all )?(the )?previous (instructions|text)"),
+            Pattern.compile("(?i)disregard (all )?(the )?previous (instructions|text)"),
+            Pattern.compile("(?i)system prompt"),
+            Pattern.compile("(?i)you are now")
+    );
+
+    @Override
+    public boolean isSafe(String input) {
+        return INJECTION_PATTERNS.stream().noneMatch(pattern -> pattern.matcher(input).find());
+    }
+
+}
@@ -0,0 +1,39 @@
+package pl.training.ai.chat;
+
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.List;
+
+/**
+ * Counts the tool calls requested by the model before executing them with the wrapped manager.
+ */
+public class MeteredToolCallingManager implements ToolCallingManager {
+
+    private final ToolCallingManager delegate;
+    private final ChatMetrics chatMetrics;
+
+    public MeteredToolCallingManager(ToolCallingManager delegate, ChatMetrics chatMetrics) {
+        this.delegate = delegate;
+        this.chatMetrics = chatMetrics;
+    }
+
+    @Override
+    public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+        return delegate.resolveToolDefinitions(chatOptions);
+    }
+
+    @Override
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+        var count = chatResponse.getResults().stream()
+                .mapToInt(generation -> generation.getOutput().getToolCalls().size())
+                .sum();
+        chatMetrics.toolsCalled(prompt, count);
+        return delegate.executeToolCalls(prompt, chatResponse);
+    }
+
+}
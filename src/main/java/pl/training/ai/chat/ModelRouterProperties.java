@@ -0,0 +1,14 @@
+package pl.training.ai.chat;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Settings of {@link RoutingAdvisor}, bound from {@code model-router}.
+ */
+@ConfigurationProperties("model-router")
+public record ModelRouterProperties(Set<String> localEndpoints, Set<String> remoteEndpoints, RoutingAdvisor.Policy defaultPolicy,
+                                     int localMaxPromptTokens, Duration firstChunkTimeout, double maxErrorRate, Duration cooldown) {
+}
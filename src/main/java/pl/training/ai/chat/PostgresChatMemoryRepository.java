@@ -0,0 +1,318 @@
+package pl.training.ai.chat;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chat history in the {@code chat_memory} table with a write-behind queue and an in-memory tier of recently used
+ * conversations. Appends update the hot tier and return; conversations are hashed to shards whose writer threads
+ * insert queued messages in batches, keeping the order of each conversation. The queue of a shard is bounded, a full
+ * queue blocks appends until the writer catches up; a batch that still fails after {@code maxAttempts} is dropped and
+ * counted in {@code chat.memory.dropped}. A conversation that is not hot is loaded from the database after its shard
+ * has flushed everything queued before the lookup, or the lookup fails. Only the most recent {@code maximumMessages}
+ * of a conversation are kept, in memory and in the table. The table is created by {@code schema.sql}.
+ */
+public class PostgresChatMemoryRepository implements ChatMemoryRepository, AutoCloseable {
+
+    private static final Set<MessageType> STORED_TYPES = EnumSet.of(MessageType.USER, MessageType.ASSISTANT, MessageType.SYSTEM);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int maximumMessages;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final int queueCapacity;
+    private final int maxAttempts;
+    private final Counter dropped;
+    private final Cache<String, Deque<Message>> conversations;
+    private final Shard[] shards;
+
+    public PostgresChatMemoryRepository(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, int shardCount,
+                                        int batchSize, Duration flushInterval, int queueCapacity, int maxAttempts,
+                                        long hotConversations, Duration idleTimeout, int maximumMessages,
+                                        MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.maximumMessages = maximumMessages;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.queueCapacity = queueCapacity;
+        this.maxAttempts = maxAttempts;
+        this.dropped = meterRegistry.counter("chat.memory.dropped");
+        this.conversations = Caffeine.newBuilder()
+                .maximumSize(hotConversations)
+                .expireAfterAccess(idleTimeout)
+                .build();
+        this.shards = new Shard[shardCount];
+        for (int index = 0; index < shardCount; index++) {
+            shards[index] = new Shard(index);
+            meterRegistry.gauge("chat.memory.queued", Tags.of("shard", Integer.toString(index)), shards[index].queue,
+                    BlockingQueue::size);
+        }
+    }
+
+    @Override
+    public List<String> findConversationIds() {
+        return jdbcTemplate.queryForList("select distinct conversation_id from chat_memory", String.class);
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        var messages = conversations.get(conversationId, this::load);
+        synchronized (messages) {
+            return List.copyOf(messages);
+        }
+    }
+
+    /**
+     * Replaces the stored history, as required by the {@link ChatMemoryRepository} contract.
+     */
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        var shard = shard(conversationId);
+        synchronized (shard) {
+            shard.enqueue(new Delete(conversationId));
+            conversations.put(conversationId, new ArrayDeque<>());
+            append(conversationId, messages);
+        }
+    }
+
+    public void append(String conversationId, List<Message> messages) {
+        var stored = messages.stream()
+                .filter(message -> STORED_TYPES.contains(message.getMessageType()))
+                .toList();
+        if (stored.isEmpty()) {
+            return;
+        }
+        // loading waits for the writer, outside the shard monitor
+        var hot = conversations.get(conversationId, this::load);
+        var shard = shard(conversationId);
+        synchronized (shard) {
+            synchronized (hot) {
+                for (var message : stored) {
+                    hot.addLast(message);
+                    if (hot.size() > maximumMessages) {
+                        hot.removeFirst();
+                    }
+                }
+            }
+            stored.forEach(message -> shard.enqueue(new Append(conversationId, message)));
+        }
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        var shard = shard(conversationId);
+        synchronized (shard) {
+            conversations.invalidate(conversationId);
+            shard.enqueue(new Delete(conversationId));
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        for (var shard : shards) {
+            shard.writer.interrupt();
+        }
+        for (var shard : shards) {
+            shard.writer.join();
+        }
+    }
+
+    private Deque<Message> load(String conversationId) {
+        shard(conversationId).awaitFlushed();
+        var messages = jdbcTemplate.query(
+                "select type, content from chat_memory where conversation_id = ? order by sequence desc limit ?",
+                (resultSet, row) -> toMessage(MessageType.valueOf(resultSet.getString(1)), resultSet.getString(2)),
+                conversationId, maximumMessages);
+        return new ArrayDeque<>(messages.reversed());
+    }
+
+    private Shard shard(String conversationId) {
+        return shards[Math.floorMod(conversationId.hashCode(), shards.length)];
+    }
+
+    private static Message toMessage(MessageType type, String content) {
+        return switch (type) {
+            case USER -> new UserMessage(content);
+            case ASSISTANT -> new AssistantMessage(content);
+            case SYSTEM -> new SystemMessage(content);
+            case TOOL -> throw new IllegalStateException("Tool messages are not stored");
+        };
+    }
+
+    private sealed interface Operation permits Append, Delete {
+
+        String conversationId();
+
+    }
+
+    private record Append(String conversationId, Message message) implements Operation {
+    }
+
+    private record Delete(String conversationId) implements Operation {
+    }
+
+    private final class Shard {
+
+        private final int index;
+        private final BlockingQueue<Operation> queue = new ArrayBlockingQueue<>(queueCapacity);
+        // guards the counters only, the monitor of the shard orders the appends and is never held while waiting
+        private final Object progress = new Object();
+        private final Thread writer;
+        private long enqueued;
+        private long flushed;
+
+        Shard(int index) {
+            this.index = index;
+            writer = Thread.ofPlatform()
+                    .name("chat-memory-writer-" + index)
+                    .daemon()
+                    .start(this::write);
+        }
+
+        // called under the monitor of the shard, a full queue blocks only the appends of this shard
+        void enqueue(Operation operation) {
+            try {
+                queue.put(operation);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while queueing chat memory", exception);
+            }
+            synchronized (progress) {
+                enqueued++;
+            }
+        }
+
+        void awaitFlushed() {
+            synchronized (progress) {
+                var target = enqueued;
+                var deadline = System.nanoTime() + flushInterval.toNanos() * maxAttempts * 10;
+                try {
+                    while (flushed < target) {
+                        if (deadline - System.nanoTime() <= 0) {
+                            throw new IllegalStateException("Chat memory shard " + index + " did not flush in time");
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(progress, deadline - System.nanoTime());
+                    }
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for chat memory", exception);
+                }
+            }
+        }
+
+        private void markFlushed(int count) {
+            synchronized (progress) {
+                flushed += count;
+                progress.notifyAll();
+            }
+        }
+
+        private void write() {
+            var batch = new ArrayList<Operation>(batchSize);
+            var running = true;
+            while (running || !queue.isEmpty()) {
+                try {
+                    var operation = queue.poll(flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+                    if (operation == null) {
+                        continue;
+                    }
+                    batch.add(operation);
+                    queue.drainTo(batch, batchSize - 1);
+                } catch (InterruptedException exception) {
+                    running = false;
+                    queue.drainTo(batch);
+                }
+                flush(batch);
+                markFlushed(batch.size());
+                batch.clear();
+                if (Thread.currentThread().isInterrupted()) {
+                    running = false;
+                }
+            }
+        }
+
+        private void flush(List<Operation> batch) {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        var appends = new ArrayList<Object[]>();
+                        var appended = new LinkedHashSet<String>();
+                        for (var operation : batch) {
+                            switch (operation) {
+                                case Append append -> {
+                                    appends.add(new Object[]{append.conversationId(),
+                                            append.message().getMessageType().name(), append.message().getText()});
+                                    appended.add(append.conversationId());
+                                }
+                                case Delete delete -> {
+                                    insert(appends);
+                                    appends.clear();
+                                    jdbcTemplate.update("delete from chat_memory where conversation_id = ?", delete.conversationId());
+                                }
+                            }
+                        }
+                        insert(appends);
+                        trim(appended);
+                    });
+                    return;
+                } catch (RuntimeException exception) {
+                    if (attempt == maxAttempts) {
+                        System.out.println("Writing chat memory failed, dropping " + batch.size() + " operations: " + exception.getMessage());
+                        dropped.increment(batch.size());
+                        return;
+                    }
+                    System.out.println("Writing chat memory failed, retrying: " + exception.getMessage());
+                    try {
+                        Thread.sleep(flushInterval.toMillis() * 10);
+                    } catch (InterruptedException interruptedException) {
+                        // closing, the writer drains what is left and stops
+                        Thread.currentThread().interrupt();
+                        System.out.println("Writing chat memory interrupted, dropping " + batch.size() + " operations");
+                        dropped.increment(batch.size());
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void insert(List<Object[]> appends) {
+            if (!appends.isEmpty()) {
+                jdbcTemplate.batchUpdate("insert into chat_memory (conversation_id, type, content) values (?, ?, ?)", appends);
+            }
+        }
+
+        // keeps the same window as the hot tier, older rows are never read
+        private void trim(Set<String> conversationIds) {
+            if (!conversationIds.isEmpty()) {
+                jdbcTemplate.batchUpdate("""
+                                delete from chat_memory
+                                where conversation_id = ? and sequence < (
+                                    select sequence from chat_memory where conversation_id = ?
+                                    order by sequence desc offset ? limit 1)
+                                """,
+                        conversationIds.stream().map(id -> new Object[]{id, id, maximumMessages - 1}).toList());
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,11 @@
+package pl.training.ai.chat;
+
+/**
+ * Screens user input for attempts to manipulate the intended behavior of the system.
+ */
+@FunctionalInterface
+public interface PromptGuard {
+
+    boolean isSafe(String input);
+
+}
@@ -0,0 +1,16 @@
+package pl.training.ai.chat;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of the {@link PromptGuard}, bound from {@code prompt-guard}.
+ */
+@ConfigurationProperties("prompt-guard")
+public record PromptGuardProperties(String mode, boolean speculative, Cache cache) {
+
+    public record Cache(long maximumSize, Duration ttl) {
+    }
+
+}
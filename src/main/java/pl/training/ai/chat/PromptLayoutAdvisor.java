@@ -0,0 +1,103 @@
+package pl.training.ai.chat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.core.Ordered;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+
+/**
+ * Lays out prompts for provider-side prefix caching. OpenAI reuses the computation for the longest previously seen
+ * prefix (of at least 1024 tokens), so static content has to come first and be byte-identical between calls. System
+ * messages are moved in front of the conversation, keeping their relative order, and normalized (common indentation
+ * and surrounding whitespace removed). Prompt tokens reported in the usage metadata are counted per endpoint, split
+ * into cached and uncached ones.
+ */
+public class PromptLayoutAdvisor implements CallAdvisor, StreamAdvisor {
+
+    private static final String UNKNOWN_ENDPOINT = "unknown";
+
+    private final MeterRegistry meterRegistry;
+
+    public PromptLayoutAdvisor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public String getName() {
+        return PromptLayoutAdvisor.class.getSimpleName();
+    }
+
+    @Override
+    public int getOrder() {
+        // after chat memory and retrieval advisors added their messages, before the bulkhead
+        return Ordered.LOWEST_PRECEDENCE - 200;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain callAdvisorChain) {
+        var response = callAdvisorChain.nextCall(layout(chatClientRequest));
+        record(endpoint(chatClientRequest), response.chatResponse());
+        return response;
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain streamAdvisorChain) {
+        var endpoint = endpoint(chatClientRequest);
+        // usage is sent with the last chunk when spring.ai.openai.chat.options.stream-usage is enabled
+        return streamAdvisorChain.nextStream(layout(chatClientRequest))
+                .doOnNext(response -> record(endpoint, response.chatResponse()));
+    }
+
+    private ChatClientRequest layout(ChatClientRequest chatClientRequest) {
+        var prompt = chatClientRequest.prompt();
+        var messages = new ArrayList<Message>(prompt.getInstructions().size());
+        for (var message : prompt.getInstructions()) {
+            if (message.getMessageType() == MessageType.SYSTEM) {
+                messages.add(new SystemMessage(message.getText().stripIndent().strip()));
+            }
+        }
+        for (var message : prompt.getInstructions()) {
+            if (message.getMessageType() != MessageType.SYSTEM) {
+                messages.add(message);
+            }
+        }
+        return chatClientRequest.mutate()
+                .prompt(new Prompt(messages, prompt.getOptions()))
+                .build();
+    }
+
+    private void record(String endpoint, ChatResponse chatResponse) {
+        if (chatResponse == null || chatResponse.getMetadata().getUsage() == null) {
+            return;
+        }
+        var usage = chatResponse.getMetadata().getUsage();
+        var promptTokens = usage.getPromptTokens() != null ? usage.getPromptTokens() : 0;
+        if (promptTokens == 0) {
+            return;
+        }
+        var cachedTokens = usage.getNativeUsage() instanceof OpenAiApi.Usage openAiUsage
+                && openAiUsage.promptTokensDetails() != null
+                && openAiUsage.promptTokensDetails().cachedTokens() != null
+                ? openAiUsage.promptTokensDetails().cachedTokens() : 0;
+        meterRegistry.counter("chat.prompt.tokens", "endpoint", endpoint, "cached", "true").increment(cachedTokens);
+        meterRegistry.counter("chat.prompt.tokens", "endpoint", endpoint, "cached", "false").increment(promptTokens - cachedTokens);
+    }
+
+    private static String endpoint(ChatClientRequest chatClientRequest) {
+        return chatClientRequest.context().get(AdvisorParams.ENDPOINT) instanceof String endpoint ? endpoint : UNKNOWN_ENDPOINT;
+    }
+
+}
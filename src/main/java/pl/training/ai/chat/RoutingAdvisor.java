@@ -0,0 +1,267 @@
+package pl.training.ai.chat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.core.Ordered;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Terminal advisor of the routing client: instead of calling its own model, it forwards the request to the local or
+ * the remote provider client, together with the advisor context. Endpoints are routed by policy: {@code LOCAL} prefers
+ * the local model as long as the prompt is small, the local provider is healthy and has free capacity, {@code REMOTE}
+ * prefers the remote model and {@code AUTO} picks the local one for small prompts only if it is not slower than the
+ * remote one. A provider whose error rate exceeds the limit is avoided for the cooldown period. When the chosen
+ * provider fails, or a stream does not send its first chunk within the first chunk timeout, the request fails over to
+ * the other one. A blocking call cannot be abandoned while it runs, so it fails over on errors only. The routing client
+ * has no default options, so only the options set by the caller, except the model name, are passed on together with
+ * the tool callbacks; each provider client applies its own defaults to the rest.
+ */
+public class RoutingAdvisor implements CallAdvisor, StreamAdvisor {
+
+    public enum Policy {
+        LOCAL, REMOTE, AUTO
+    }
+
+    private static final double SMOOTHING = 0.2;
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final Provider local;
+    private final Provider remote;
+    private final Set<String> localEndpoints;
+    private final Set<String> remoteEndpoints;
+    private final Policy defaultPolicy;
+    private final int localMaxPromptTokens;
+    private final Duration firstChunkTimeout;
+    private final double maxErrorRate;
+    private final Duration cooldown;
+    private final MeterRegistry meterRegistry;
+
+    public RoutingAdvisor(Provider local, Provider remote, Set<String> localEndpoints, Set<String> remoteEndpoints,
+                          Policy defaultPolicy, int localMaxPromptTokens, Duration firstChunkTimeout, double maxErrorRate,
+                          Duration cooldown, MeterRegistry meterRegistry) {
+        this.local = local;
+        this.remote = remote;
+        this.localEndpoints = Set.copyOf(localEndpoints);
+        this.remoteEndpoints = Set.copyOf(remoteEndpoints);
+        this.defaultPolicy = defaultPolicy;
+        this.localMaxPromptTokens = localMaxPromptTokens;
+        this.firstChunkTimeout = firstChunkTimeout;
+        this.maxErrorRate = maxErrorRate;
+        this.cooldown = cooldown;
+        this.meterRegistry = meterRegistry;
+        for (var provider : List.of(local, remote)) {
+            var tags = Tags.of("provider", provider.name);
+            meterRegistry.gauge("chat.router.in.flight", tags, provider.inFlight, AtomicInteger::get);
+            meterRegistry.gauge("chat.router.latency.average", tags, provider, Provider::averageLatencyMillis);
+            meterRegistry.gauge("chat.router.error.rate", tags, provider, Provider::errorRate);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return RoutingAdvisor.class.getSimpleName();
+    }
+
+    @Override
+    public int getOrder() {
+        // last, it replaces the call of the model
+        return Ordered.LOWEST_PRECEDENCE - 10;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain callAdvisorChain) {
+        var route = route(chatClientRequest);
+        try {
+            return call(route.primary(), chatClientRequest);
+        } catch (RuntimeException exception) {
+            failover(route, exception);
+            return call(route.fallback(), chatClientRequest);
+        }
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain streamAdvisorChain) {
+        return Flux.defer(() -> {
+            var route = route(chatClientRequest);
+            var emitted = new AtomicBoolean();
+            return stream(route.primary(), chatClientRequest, true)
+                    .doOnNext(response -> emitted.set(true))
+                    .onErrorResume(exception -> !emitted.get(), exception -> {
+                        failover(route, exception);
+                        return stream(route.fallback(), chatClientRequest, false);
+                    });
+        });
+    }
+
+    private ChatClientResponse call(Provider provider, ChatClientRequest chatClientRequest) {
+        provider.inFlight.incrementAndGet();
+        var start = System.nanoTime();
+        try {
+            var response = provider.client.prompt(forward(chatClientRequest))
+                    .advisors(advisor -> advisor.params(chatClientRequest.context()))
+                    .call()
+                    .chatClientResponse();
+            succeeded(provider, System.nanoTime() - start);
+            return response;
+        } catch (RuntimeException exception) {
+            provider.failed();
+            throw exception;
+        } finally {
+            provider.inFlight.decrementAndGet();
+        }
+    }
+
+    private Flux<ChatClientResponse> stream(Provider provider, ChatClientRequest chatClientRequest, boolean timed) {
+        return Flux.defer(() -> {
+            provider.inFlight.incrementAndGet();
+            var start = System.nanoTime();
+            var responses = provider.client.prompt(forward(chatClientRequest))
+                    .advisors(advisor -> advisor.params(chatClientRequest.context()))
+                    .stream()
+                    .chatClientResponse();
+            if (timed) {
+                responses = responses.timeout(Mono.delay(firstChunkTimeout), response -> Mono.never());
+            }
+            return responses
+                    .doOnComplete(() -> succeeded(provider, System.nanoTime() - start))
+                    .doOnError(exception -> provider.failed())
+                    .doFinally(signal -> provider.inFlight.decrementAndGet());
+        });
+    }
+
+    private Route route(ChatClientRequest chatClientRequest) {
+        var endpoint = chatClientRequest.context().get(AdvisorParams.ENDPOINT) instanceof String name ? name : ChatMetrics.UNKNOWN;
+        var policy = localEndpoints.contains(endpoint) ? Policy.LOCAL
+                : remoteEndpoints.contains(endpoint) ? Policy.REMOTE
+                : defaultPolicy;
+        var small = promptTokens(chatClientRequest.prompt()) <= localMaxPromptTokens;
+        var route = switch (policy) {
+            case REMOTE -> new Route(remote, local, "policy");
+            case LOCAL -> !small ? new Route(remote, local, "prompt-size")
+                    : local.saturated() ? new Route(remote, local, "local-saturated")
+                    : new Route(local, remote, "policy");
+            case AUTO -> !small ? new Route(remote, local, "prompt-size")
+                    : local.saturated() ? new Route(remote, local, "local-saturated")
+                    : local.averageLatencyMillis() > remote.averageLatencyMillis() ? new Route(remote, local, "latency")
+                    : new Route(local, remote, "latency");
+        };
+        if (!healthy(route.primary()) && healthy(route.fallback())) {
+            route = new Route(route.fallback(), route.primary(), "unhealthy");
+        }
+        meterRegistry.counter("chat.router.decisions", "endpoint", endpoint, "provider", route.primary().name,
+                "reason", route.reason()).increment();
+        return route;
+    }
+
+    private void succeeded(Provider provider, long latencyNanos) {
+        provider.succeeded(latencyNanos);
+        meterRegistry.timer("chat.router.latency", "provider", provider.name).record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private boolean healthy(Provider provider) {
+        return provider.errorRate() <= maxErrorRate || System.nanoTime() - provider.lastFailure > cooldown.toNanos();
+    }
+
+    private void failover(Route route, Throwable exception) {
+        meterRegistry.counter("chat.router.failovers", "from", route.primary().name, "to", route.fallback().name,
+                "exception", exception.getClass().getSimpleName()).increment();
+    }
+
+    private static int promptTokens(Prompt prompt) {
+        var chars = 0;
+        for (var message : prompt.getInstructions()) {
+            chars += Objects.requireNonNullElse(message.getText(), "").length();
+        }
+        return chars / CHARS_PER_TOKEN;
+    }
+
+    // only the options set by the caller, the model name is provider specific and left to the defaults of each provider
+    private static Prompt forward(ChatClientRequest chatClientRequest) {
+        var prompt = chatClientRequest.prompt();
+        var options = prompt.getOptions();
+        if (options == null) {
+            return new Prompt(prompt.getInstructions());
+        }
+        var forwarded = ToolCallingChatOptions.builder()
+                .temperature(options.getTemperature())
+                .maxTokens(options.getMaxTokens())
+                .topP(options.getTopP())
+                .topK(options.getTopK())
+                .frequencyPenalty(options.getFrequencyPenalty())
+                .presencePenalty(options.getPresencePenalty())
+                .stopSequences(options.getStopSequences());
+        if (options instanceof ToolCallingChatOptions toolCallingOptions) {
+            forwarded.toolCallbacks(toolCallingOptions.getToolCallbacks())
+                    .toolNames(toolCallingOptions.getToolNames())
+                    .internalToolExecutionEnabled(toolCallingOptions.getInternalToolExecutionEnabled())
+                    .toolContext(toolCallingOptions.getToolContext());
+        }
+        return new Prompt(prompt.getInstructions(), forwarded.build());
+    }
+
+    private record Route(Provider primary, Provider fallback, String reason) {
+    }
+
+    /**
+     * Provider client with its exponentially weighted latency and error rate.
+     */
+    public static final class Provider {
+
+        private final String name;
+        private final ChatClient client;
+        private final int maxConcurrentCalls;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private double averageLatencyNanos;
+        private double errorRate;
+        private volatile long lastFailure;
+
+        public Provider(String name, ChatClient client, int maxConcurrentCalls) {
+            this.name = name;
+            this.client = client;
+            this.maxConcurrentCalls = maxConcurrentCalls;
+        }
+
+        boolean saturated() {
+            return inFlight.get() >= maxConcurrentCalls;
+        }
+
+        synchronized double averageLatencyMillis() {
+            return averageLatencyNanos / 1_000_000;
+        }
+
+        synchronized double errorRate() {
+            return errorRate;
+        }
+
+        synchronized void succeeded(long latencyNanos) {
+            averageLatencyNanos = averageLatencyNanos == 0 ? latencyNanos
+                    : SMOOTHING * latencyNanos + (1 - SMOOTHING) * averageLatencyNanos;
+            errorRate = (1 - SMOOTHING) * errorRate;
+        }
+
+        synchronized void failed() {
+            errorRate = SMOOTHING + (1 - SMOOTHING) * errorRate;
+            lastFailure = System.nanoTime();
+        }
+
+    }
+
+}
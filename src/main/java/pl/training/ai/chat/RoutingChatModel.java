@@ -0,0 +1,33 @@
+package pl.training.ai.chat;
+
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import reactor.core.publisher.Flux;
+
+/**
+ * Model of the routing client. It is never called, the {@link RoutingAdvisor} forwards every request to one of the
+ * provider clients. It has no default options, so the requests carry only the options set by the caller and none of
+ * the defaults of either provider leak into the other one.
+ */
+public class RoutingChatModel implements ChatModel {
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        throw new IllegalStateException("The routing model is never called, requests are forwarded by the routing advisor");
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.error(new IllegalStateException("The routing model is never called, requests are forwarded by the routing advisor"));
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        // tool calling options, otherwise the chat client drops the tools of the request
+        return ToolCallingChatOptions.builder().build();
+    }
+
+}
@@ -0,0 +1,282 @@
+package pl.training.ai.chat;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.ai.chat.client.ChatClientMessageAggregator;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.core.Ordered;
+import pl.training.ai.Hashes;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Answers prompts that are semantically close to an earlier one with the stored response. Only the user messages are
+ * embedded, so a long static system prompt does not drown the question; the system and assistant messages and the
+ * chat options select the partition instead, and only prompts with the same ones are compared by cosine similarity.
+ * Only endpoints listed in the configuration are cached, a call opts in with the {@link AdvisorParams#ENDPOINT}
+ * advisor parameter. Entries expire after the TTL and the least recently used ones are evicted when the cache, all
+ * partitions together, exceeds the maximum size.
+ * <p>
+ * The advisor runs before chat memory and retrieval advisors, so a hit skips them too. The key therefore does not
+ * contain the conversation history or the retrieved documents: endpoints with chat memory must not opt in, and
+ * answers of retrieval endpoints are reused until the TTL even if the documents change.
+ */
+public class SemanticCacheAdvisor implements CallAdvisor, StreamAdvisor {
+
+    private final EmbeddingModel embeddingModel;
+    private final Set<String> endpoints;
+    private final double similarityThreshold;
+    private final int maximumSize;
+    private final Duration ttl;
+    private final Map<String, Counter> hits = new HashMap<>();
+    private final Map<String, Counter> misses = new HashMap<>();
+    // lookups share the read lock and only touch the entry they return, stores take the write lock; they follow a
+    // model call anyway and also drop expired entries, empty partitions and the least recently used entry
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<PartitionKey, List<Entry>> partitions = new HashMap<>();
+    private int size;
+    private final ChatClientMessageAggregator messageAggregator = new ChatClientMessageAggregator();
+
+    public SemanticCacheAdvisor(EmbeddingModel embeddingModel, Set<String> endpoints, double similarityThreshold,
+                                int maximumSize, Duration ttl, MeterRegistry meterRegistry) {
+        this.embeddingModel = embeddingModel;
+        this.endpoints = Set.copyOf(endpoints);
+        this.similarityThreshold = similarityThreshold;
+        this.maximumSize = maximumSize;
+        this.ttl = ttl;
+        for (var endpoint : this.endpoints) {
+            hits.put(endpoint, meterRegistry.counter("chat.semantic.cache", "endpoint", endpoint, "result", "hit"));
+            misses.put(endpoint, meterRegistry.counter("chat.semantic.cache", "endpoint", endpoint, "result", "miss"));
+            meterRegistry.gauge("chat.semantic.cache.size", Tags.of("endpoint", endpoint), this, advisor -> advisor.size(endpoint));
+        }
+    }
+
+    @Override
+    public String getName() {
+        return SemanticCacheAdvisor.class.getSimpleName();
+    }
+
+    @Override
+    public int getOrder() {
+        // before chat memory and retrieval advisors, so a hit skips them as well
+        return Ordered.HIGHEST_PRECEDENCE + 500;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain callAdvisorChain) {
+        var endpoint = endpoint(chatClientRequest);
+        var question = question(chatClientRequest.prompt());
+        if (endpoint == null || question.isBlank()) {
+            return callAdvisorChain.nextCall(chatClientRequest);
+        }
+        var partition = new PartitionKey(endpoint, context(chatClientRequest.prompt()));
+        var embedding = normalize(embeddingModel.embed(question));
+        var cached = find(partition, embedding);
+        if (cached != null) {
+            return toResponse(cached, chatClientRequest);
+        }
+        var response = callAdvisorChain.nextCall(chatClientRequest);
+        store(partition, embedding, response.chatResponse());
+        return response;
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain streamAdvisorChain) {
+        var endpoint = endpoint(chatClientRequest);
+        var question = question(chatClientRequest.prompt());
+        if (endpoint == null || question.isBlank()) {
+            return streamAdvisorChain.nextStream(chatClientRequest);
+        }
+        // the question is embedded on subscription, not when the stream is assembled
+        return Flux.defer(() -> {
+            var partition = new PartitionKey(endpoint, context(chatClientRequest.prompt()));
+            var embedding = normalize(embeddingModel.embed(question));
+            var cached = find(partition, embedding);
+            if (cached != null) {
+                return Flux.just(toResponse(cached, chatClientRequest));
+            }
+            return messageAggregator.aggregateChatClientResponse(streamAdvisorChain.nextStream(chatClientRequest),
+                    response -> store(partition, embedding, response.chatResponse()));
+        });
+    }
+
+    private String endpoint(ChatClientRequest chatClientRequest) {
+        return chatClientRequest.context().get(AdvisorParams.ENDPOINT) instanceof String endpoint && endpoints.contains(endpoint) ? endpoint : null;
+    }
+
+    private ChatResponse find(PartitionKey partition, float[] embedding) {
+        ChatResponse cached = null;
+        lock.readLock().lock();
+        try {
+            var now = System.nanoTime();
+            Entry best = null;
+            var bestScore = similarityThreshold;
+            for (var entry : partitions.getOrDefault(partition, List.of())) {
+                if (entry.expiresAt - now < 0) {
+                    continue;
+                }
+                var score = similarity(embedding, entry.embedding);
+                if (score >= bestScore) {
+                    bestScore = score;
+                    best = entry;
+                }
+            }
+            if (best != null) {
+                best.lastUsed = now;
+                cached = best.chatResponse;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        (cached != null ? hits : misses).get(partition.endpoint()).increment();
+        return cached;
+    }
+
+    // the maximum size bounds the entries of all partitions together
+    private void store(PartitionKey partition, float[] embedding, ChatResponse chatResponse) {
+        if (chatResponse == null || chatResponse.getResult() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            var now = System.nanoTime();
+            Entry leastRecentlyUsed = null;
+            PartitionKey leastRecentlyUsedPartition = null;
+            for (var iterator = partitions.entrySet().iterator(); iterator.hasNext(); ) {
+                var next = iterator.next();
+                var entries = next.getValue();
+                var before = entries.size();
+                entries.removeIf(entry -> entry.expiresAt - now < 0);
+                size -= before - entries.size();
+                if (entries.isEmpty()) {
+                    iterator.remove();
+                    continue;
+                }
+                for (var entry : entries) {
+                    if (leastRecentlyUsed == null || entry.lastUsed < leastRecentlyUsed.lastUsed) {
+                        leastRecentlyUsed = entry;
+                        leastRecentlyUsedPartition = next.getKey();
+                    }
+                }
+            }
+            if (size >= maximumSize && leastRecentlyUsed != null) {
+                var entries = partitions.get(leastRecentlyUsedPartition);
+                entries.remove(leastRecentlyUsed);
+                size--;
+                if (entries.isEmpty()) {
+                    partitions.remove(leastRecentlyUsedPartition);
+                }
+            }
+            partitions.computeIfAbsent(partition, key -> new ArrayList<>())
+                    .add(new Entry(embedding, chatResponse, now, now + ttl.toNanos()));
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private double size(String endpoint) {
+        lock.readLock().lock();
+        try {
+            return partitions.entrySet().stream()
+                    .filter(entry -> entry.getKey().endpoint().equals(endpoint))
+                    .mapToInt(entry -> entry.getValue().size())
+                    .sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static String question(Prompt prompt) {
+        return prompt.getInstructions().stream()
+                .filter(message -> message.getMessageType() == MessageType.USER)
+                .map(message -> Objects.requireNonNullElse(message.getText(), ""))
+                .collect(Collectors.joining("\n"));
+    }
+
+    // everything but the user messages that shapes the answer, hashed into the partition key
+    private static String context(Prompt prompt) {
+        var context = new StringBuilder();
+        for (var message : prompt.getInstructions()) {
+            if (message.getMessageType() != MessageType.USER) {
+                context.append(message.getMessageType().getValue()).append(": ")
+                        .append(Objects.requireNonNullElse(message.getText(), "")).append('\n');
+            }
+        }
+        var options = prompt.getOptions();
+        if (options != null) {
+            context.append(options.getModel()).append('\u0000')
+                    .append(options.getTemperature()).append('\u0000')
+                    .append(options.getTopP()).append('\u0000')
+                    .append(options.getTopK()).append('\u0000')
+                    .append(options.getMaxTokens()).append('\u0000')
+                    .append(options.getFrequencyPenalty()).append('\u0000')
+                    .append(options.getPresencePenalty()).append('\u0000')
+                    .append(options.getStopSequences());
+        }
+        return Hashes.sha256(context.toString());
+    }
+
+    private static ChatClientResponse toResponse(ChatResponse chatResponse, ChatClientRequest chatClientRequest) {
+        return ChatClientResponse.builder()
+                .chatResponse(chatResponse)
+                .context(chatClientRequest.context())
+                .build();
+    }
+
+    private static float[] normalize(float[] vector) {
+        var norm = 0.0;
+        for (var value : vector) {
+            norm += value * value;
+        }
+        var scale = norm == 0 ? 0 : (float) (1 / Math.sqrt(norm));
+        var normalized = new float[vector.length];
+        for (int index = 0; index < vector.length; index++) {
+            normalized[index] = vector[index] * scale;
+        }
+        return normalized;
+    }
+
+    private static double similarity(float[] first, float[] second) {
+        var sum = 0.0f;
+        for (int index = 0; index < first.length; index++) {
+            sum += first[index] * second[index];
+        }
+        return sum;
+    }
+
+    private record PartitionKey(String endpoint, String context) {
+    }
+
+    private static final class Entry {
+
+        final float[] embedding;
+        final ChatResponse chatResponse;
+        final long expiresAt;
+        volatile long lastUsed;
+
+        Entry(float[] embedding, ChatResponse chatResponse, long now, long expiresAt) {
+            this.embedding = embedding;
+            this.chatResponse = chatResponse;
+            this.lastUsed = now;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+}
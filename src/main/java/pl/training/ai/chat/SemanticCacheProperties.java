@@ -0,0 +1,13 @@
+package pl.training.ai.chat;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Settings of {@link SemanticCacheAdvisor}, bound from {@code semantic-cache}.
+ */
+@ConfigurationProperties("semantic-cache")
+public record SemanticCacheProperties(Set<String> endpoints, double similarityThreshold, int maximumSize, Duration ttl) {
+}
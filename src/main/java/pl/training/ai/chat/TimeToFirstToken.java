@@ -0,0 +1,41 @@
+package pl.training.ai.chat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Records the time from subscription to the first streamed element as {@code chat.ttft}, tagged with the endpoint.
+ */
+public class TimeToFirstToken {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public TimeToFirstToken(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> Function<Flux<T>, Flux<T>> of(String endpoint) {
+        var timer = timers.computeIfAbsent(endpoint, key -> Timer.builder("chat.ttft")
+                .tag("endpoint", key)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry));
+        return flux -> Flux.defer(() -> {
+            var start = System.nanoTime();
+            var first = new AtomicBoolean(true);
+            return flux.doOnNext(element -> {
+                if (first.compareAndSet(true, false)) {
+                    timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            });
+        });
+    }
+
+}
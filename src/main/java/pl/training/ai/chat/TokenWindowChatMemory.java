@@ -0,0 +1,52 @@
+package pl.training.ai.chat;
+
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Chat memory that returns the newest messages of a conversation that fit into a token budget, instead of a fixed
+ * number of messages. Appends are handed to the write-behind repository and do not wait for the database.
+ */
+public class TokenWindowChatMemory implements ChatMemory {
+
+    private final PostgresChatMemoryRepository repository;
+    private final TokenCountEstimator tokenCountEstimator;
+    private final int maxTokens;
+
+    public TokenWindowChatMemory(PostgresChatMemoryRepository repository, TokenCountEstimator tokenCountEstimator, int maxTokens) {
+        this.repository = repository;
+        this.tokenCountEstimator = tokenCountEstimator;
+        this.maxTokens = maxTokens;
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        repository.append(conversationId, messages);
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        var messages = repository.findByConversationId(conversationId);
+        var window = new ArrayDeque<Message>();
+        var tokens = 0;
+        for (var message : messages.reversed()) {
+            tokens += tokenCountEstimator.estimate(Objects.requireNonNullElse(message.getText(), ""));
+            if (tokens > maxTokens) {
+                break;
+            }
+            window.addFirst(message);
+        }
+        return List.copyOf(window);
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        repository.deleteByConversationId(conversationId);
+    }
+
+}
@@ -0,0 +1,184 @@
+package pl.training.ai.embedding;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Coalesces concurrent embedding requests into batched calls of the delegate. Texts are queued and a dispatcher
+ * collects them until the batch is full or the flush window has passed since the first one arrived. The window adapts
+ * to the load: it shrinks while batches hold a single text, so a lone request barely waits, and grows while batches
+ * fill only partially, so concurrent requests have a chance to meet. Requests with model options or with at least a
+ * full batch of texts are passed through, and so is every request after {@link #close()}.
+ */
+public class BatchingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private static final double WINDOW_GROWTH = 1.5;
+    private static final EmbeddingOptions DEFAULT_OPTIONS = EmbeddingOptionsBuilder.builder().build();
+
+    private final EmbeddingModel delegate;
+    private final int maxBatchSize;
+    private final long minWaitNanos;
+    private final long maxWaitNanos;
+    private final Semaphore batchPermits;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final DistributionSummary batchSize;
+    private final Timer waitTimer;
+    private final Thread dispatcher;
+    private volatile long windowNanos;
+    private volatile boolean closed;
+
+    public BatchingEmbeddingModel(EmbeddingModel delegate, int maxBatchSize, Duration minWait, Duration maxWait,
+                                  int maxConcurrentBatches, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.minWaitNanos = minWait.toNanos();
+        this.maxWaitNanos = maxWait.toNanos();
+        this.windowNanos = minWaitNanos;
+        this.batchPermits = new Semaphore(maxConcurrentBatches);
+        this.batchSize = DistributionSummary.builder("embeddings.batch.size")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("embeddings.batch.wait")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        meterRegistry.gauge("embeddings.batch.window", this, model -> model.windowNanos / 1_000_000.0);
+        meterRegistry.gauge("embeddings.batch.queued", queue, BlockingQueue::size);
+        this.dispatcher = Thread.ofPlatform()
+                .name("embedding-batcher")
+                .daemon()
+                .start(this::dispatch);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        if (closed || !isBatchable(request)) {
+            return delegate.call(request);
+        }
+        var pending = new ArrayList<Pending>(request.getInstructions().size());
+        for (var text : request.getInstructions()) {
+            var item = new Pending(text, System.nanoTime(), new CompletableFuture<>());
+            pending.add(item);
+            queue.add(item);
+        }
+        if (closed) {
+            // closed while the texts were queued, the dispatcher may have stopped before it saw them
+            failQueued();
+        }
+        var embeddings = new ArrayList<Embedding>(pending.size());
+        try {
+            for (int index = 0; index < pending.size(); index++) {
+                embeddings.add(new Embedding(pending.get(index).result().join(), index));
+            }
+        } catch (CompletionException exception) {
+            throw exception.getCause() instanceof RuntimeException cause ? cause : exception;
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getFormattedContent(MetadataMode.EMBED));
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        dispatcher.interrupt();
+        dispatcher.join();
+        executor.close();
+        failQueued();
+    }
+
+    private boolean isBatchable(EmbeddingRequest request) {
+        var options = request.getOptions();
+        var defaultOptions = options == null || (options.getModel() == null && options.getDimensions() == null);
+        return defaultOptions && request.getInstructions().size() < maxBatchSize;
+    }
+
+    private void dispatch() {
+        var batch = new ArrayList<Pending>(maxBatchSize);
+        var running = true;
+        while (running || !queue.isEmpty()) {
+            try {
+                batch.add(queue.take());
+                var deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    var pending = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (pending == null) {
+                        break;
+                    }
+                    batch.add(pending);
+                }
+                batchPermits.acquire();
+            } catch (InterruptedException exception) {
+                running = false;
+                queue.drainTo(batch);
+                batchPermits.acquireUninterruptibly();
+            }
+            if (batch.isEmpty()) {
+                batchPermits.release();
+                continue;
+            }
+            adapt(batch.size());
+            var items = List.copyOf(batch);
+            batch.clear();
+            executor.execute(() -> send(items));
+        }
+    }
+
+    private void failQueued() {
+        var leftovers = new ArrayList<Pending>();
+        queue.drainTo(leftovers);
+        var exception = new IllegalStateException("Embedding batcher is closed");
+        leftovers.forEach(item -> item.result().completeExceptionally(exception));
+    }
+
+    private void adapt(int size) {
+        if (size == 1) {
+            windowNanos = Math.max(minWaitNanos, windowNanos / 2);
+        } else if (size < maxBatchSize) {
+            windowNanos = Math.min(maxWaitNanos, (long) (windowNanos * WINDOW_GROWTH));
+        }
+    }
+
+    private void send(List<Pending> items) {
+        try {
+            var start = System.nanoTime();
+            items.forEach(item -> waitTimer.record(start - item.enqueued(), TimeUnit.NANOSECONDS));
+            batchSize.record(items.size());
+            var texts = items.stream().map(Pending::text).toList();
+            var response = delegate.call(new EmbeddingRequest(texts, DEFAULT_OPTIONS));
+            for (int index = 0; index < items.size(); index++) {
+                items.get(index).result().complete(response.getResults().get(index).getOutput());
+            }
+        } catch (RuntimeException exception) {
+            items.forEach(item -> item.result().completeExceptionally(exception));
+        } finally {
+            batchPermits.release();
+        }
+    }
+
+    private record Pending(String text, long enqueued, CompletableFuture<float[]> result) {
+    }
+
+}
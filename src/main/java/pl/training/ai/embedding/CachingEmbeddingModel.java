@@ -0,0 +1,239 @@
+package pl.training.ai.embedding;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import pl.training.ai.Hashes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Caches embeddings keyed by the effective model id and dimensions and the normalized text. Concurrent requests for
+ * the same text share one remote call; the optional on-disk tier keeps vectors across restarts. The disk tier has the
+ * same maximum size and TTL as the memory one: expired files are misses, and every few writes the expired and the
+ * oldest files above the maximum size are deleted.
+ */
+public class CachingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final EmbeddingModel delegate;
+    private final String model;
+    private final Integer dimensions;
+    private final long maximumSize;
+    private final Duration ttl;
+    private final Path directory;
+    private final long pruneInterval;
+    // the first write prunes what an earlier run left behind
+    private final AtomicLong writesSincePrune;
+    private final ReentrantLock pruneLock = new ReentrantLock();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AsyncCache<String, float[]> cache;
+    private final Counter diskHits;
+    private final Counter diskMisses;
+
+    /**
+     * @param model      model used when the request does not name one
+     * @param dimensions dimensions used when the request does not set them, {@code null} for the model default
+     * @param directory  on-disk tier, {@code null} disables it
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate, String model, Integer dimensions, long maximumSize, Duration ttl,
+                                 Path directory, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.model = model;
+        this.dimensions = dimensions;
+        this.maximumSize = maximumSize;
+        this.ttl = ttl;
+        this.directory = directory;
+        this.pruneInterval = Math.max(1, maximumSize / 10);
+        this.writesSincePrune = new AtomicLong(pruneInterval);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .executor(executor)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "embeddings");
+        this.diskHits = meterRegistry.counter("embeddings.cache.disk", "result", "hit");
+        this.diskMisses = meterRegistry.counter("embeddings.cache.disk", "result", "miss");
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        var options = request.getOptions();
+        var requestModel = options != null && options.getModel() != null ? options.getModel() : model;
+        var requestDimensions = options != null && options.getDimensions() != null ? options.getDimensions() : dimensions;
+        // the same text embedded with other dimensions is another vector, in memory and on disk
+        var prefix = requestModel + '\u0000' + (requestDimensions == null ? "default" : requestDimensions) + '\u0000';
+        var texts = new HashMap<String, String>();
+        var keys = new ArrayList<String>(request.getInstructions().size());
+        for (var text : request.getInstructions()) {
+            var key = prefix + normalize(text);
+            texts.putIfAbsent(key, text);
+            keys.add(key);
+        }
+        var vectors = cache.getAll(keys, (missingKeys, executor) ->
+                CompletableFuture.supplyAsync(() -> load(missingKeys, texts, request), executor)).join();
+        var embeddings = new ArrayList<Embedding>(keys.size());
+        for (int index = 0; index < keys.size(); index++) {
+            embeddings.add(new Embedding(vectors.get(keys.get(index)), index));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getFormattedContent(MetadataMode.EMBED));
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    private Map<String, float[]> load(Set<? extends String> keys, Map<String, String> texts, EmbeddingRequest request) {
+        var vectors = new HashMap<String, float[]>();
+        var remoteKeys = new ArrayList<String>();
+        for (var key : keys) {
+            var vector = directory != null ? readFromDisk(key) : null;
+            if (vector != null) {
+                vectors.put(key, vector);
+            } else {
+                remoteKeys.add(key);
+            }
+        }
+        if (!remoteKeys.isEmpty()) {
+            var remoteTexts = remoteKeys.stream().map(texts::get).toList();
+            var response = delegate.call(new EmbeddingRequest(remoteTexts, request.getOptions()));
+            for (int index = 0; index < remoteKeys.size(); index++) {
+                var vector = response.getResults().get(index).getOutput();
+                vectors.put(remoteKeys.get(index), vector);
+                if (directory != null) {
+                    writeToDisk(remoteKeys.get(index), vector);
+                }
+            }
+        }
+        return vectors;
+    }
+
+    private float[] readFromDisk(String key) {
+        var file = directory.resolve(Hashes.sha256(key));
+        try {
+            if (!Files.exists(file) || isExpired(Files.getLastModifiedTime(file))) {
+                diskMisses.increment();
+                return null;
+            }
+            var buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            var vector = new float[buffer.remaining()];
+            buffer.get(vector);
+            diskHits.increment();
+            return vector;
+        } catch (NoSuchFileException exception) {
+            // deleted by a concurrent prune
+            diskMisses.increment();
+            return null;
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    private void writeToDisk(String key, float[] vector) {
+        var buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        try {
+            Files.createDirectories(directory);
+            var file = directory.resolve(Hashes.sha256(key));
+            var temp = Files.createTempFile(directory, "embedding", TEMP_SUFFIX);
+            Files.write(temp, buffer.array());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        if (writesSincePrune.incrementAndGet() > pruneInterval) {
+            prune();
+        }
+    }
+
+    // the modification time is the write time, files are never touched on read
+    private void prune() {
+        if (!pruneLock.tryLock()) {
+            return;
+        }
+        try (var files = Files.list(directory)) {
+            writesSincePrune.set(0);
+            var live = new ArrayList<Map.Entry<Path, FileTime>>();
+            for (var file : (Iterable<Path>) files::iterator) {
+                var modified = lastModifiedTime(file);
+                if (modified == null) {
+                    continue;
+                }
+                // temp files of interrupted writes are left alone until they expire
+                if (isExpired(modified)) {
+                    Files.deleteIfExists(file);
+                } else if (!file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    live.add(Map.entry(file, modified));
+                }
+            }
+            if (live.size() > maximumSize) {
+                live.sort(Map.Entry.comparingByValue());
+                for (var entry : live.subList(0, (int) (live.size() - maximumSize))) {
+                    Files.deleteIfExists(entry.getKey());
+                }
+            }
+        } catch (IOException exception) {
+            // the vector is already cached, a failed prune is retried after the next writes
+            System.out.println("Pruning the embedding cache failed: " + exception.getMessage());
+        } finally {
+            pruneLock.unlock();
+        }
+    }
+
+    private boolean isExpired(FileTime modified) {
+        return modified.toInstant().plus(ttl).isBefore(Instant.now());
+    }
+
+    private static FileTime lastModifiedTime(Path file) throws IOException {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (NoSuchFileException exception) {
+            return null;
+        }
+    }
+
+    private static String normalize(String text) {
+        return WHITESPACE.matcher(Normalizer.normalize(text, Normalizer.Form.NFC)).replaceAll(" ").trim();
+    }
+
+}
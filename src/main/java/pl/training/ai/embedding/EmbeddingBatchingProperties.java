@@ -0,0 +1,12 @@
+package pl.training.ai.embedding;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of {@link BatchingEmbeddingModel}, bound from {@code embedding-batching}.
+ */
+@ConfigurationProperties("embedding-batching")
+public record EmbeddingBatchingProperties(int maxBatchSize, Duration minWait, Duration maxWait, int maxConcurrentBatches) {
+}
@@ -0,0 +1,14 @@
+package pl.training.ai.embedding;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of {@link CachingEmbeddingModel}, bound from {@code embedding-cache}.
+ *
+ * @param directory on-disk tier, blank or missing keeps the cache in memory only
+ */
+@ConfigurationProperties("embedding-cache")
+public record EmbeddingCacheProperties(long maximumSize, Duration ttl, String directory) {
+}
@@ -7,16 +7,21 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 import pl.training.ai.chat.PromptRequest;
+import pl.training.ai.chat.TimeToFirstToken;
+import reactor.core.publisher.Flux;
 
 @RestController
 public class McpController {
 
     private final ChatClient chatClient;
     private final ToolCallbackProvider toolCallbackProvider;
+    private final TimeToFirstToken timeToFirstToken;
 
-    public McpController(@Qualifier("ollamaChatClient") ChatClient chatClient, ToolCallbackProvider tools) {
+    public McpController(@Qualifier("ollamaChatClient") ChatClient chatClient, ToolCallbackProvider tools,
+                         TimeToFirstToken timeToFirstToken) {
         this.chatClient = chatClient;
         this.toolCallbackProvider = tools;
+        this.timeToFirstToken = timeToFirstToken;
     }
 
     @PostMapping("search")
@@ -27,4 +32,15 @@ public class McpController {
                 .call()
                 .content();
     }
+
+    // Tool calls requested by the streamed response are executed by the model on a bounded-elastic scheduler
+    @PostMapping("reactive/search")
+    public Flux<String> reactiveSearch(@RequestBody PromptRequest promptRequest) {
+        return chatClient.prompt()
+                .toolCallbacks(toolCallbackProvider)
+                .user(promptRequest.message())
+                .stream()
+                .content()
+                .transform(timeToFirstToken.of("search"));
+    }
 }
@@ -0,0 +1,171 @@
+package pl.training.ai.multimodel;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import pl.training.ai.Hashes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed disk cache of generated media. Artifacts are named by the hash of everything that determines the
+ * output (prompt and model options), so a repeated request is answered from disk. Concurrent requests for the same
+ * artifact share one generation. The least recently used files are deleted when the total size exceeds the limit;
+ * the access order survives restarts through the file modification times.
+ */
+public class ArtifactCache {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final long maximumBytes;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Long> sizes = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<Path>> generations = new ConcurrentHashMap<>();
+    private long totalBytes;
+
+    public ArtifactCache(Path directory, long maximumBytes, MeterRegistry meterRegistry) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maximumBytes = maximumBytes;
+        this.meterRegistry = meterRegistry;
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> Files.isRegularFile(file) && !file.toString().endsWith(TEMP_SUFFIX))
+                    .sorted(Comparator.comparing(ArtifactCache::lastModified))
+                    .forEach(file -> register(file.getFileName().toString(), size(file)));
+        }
+        meterRegistry.gauge("artifacts.cache.bytes", this, cache -> cache.totalBytes());
+    }
+
+    public static String key(Object... parts) {
+        var text = new StringBuilder();
+        for (var part : parts) {
+            text.append(part).append('\u0000');
+        }
+        return Hashes.sha256(text.toString());
+    }
+
+    public Path get(String key, String extension, Supplier<byte[]> generator) {
+        var name = key + "." + extension;
+        var file = directory.resolve(name);
+        if (touch(name)) {
+            meterRegistry.counter("artifacts.cache", "result", "hit").increment();
+            return file;
+        }
+        var generation = new CompletableFuture<Path>();
+        var running = generations.putIfAbsent(name, generation);
+        if (running != null) {
+            meterRegistry.counter("artifacts.cache", "result", "shared").increment();
+            return join(running);
+        }
+        meterRegistry.counter("artifacts.cache", "result", "miss").increment();
+        try {
+            generation.complete(store(name, generator.get()));
+        } catch (RuntimeException exception) {
+            generation.completeExceptionally(exception);
+        } finally {
+            generations.remove(name);
+        }
+        return join(generation);
+    }
+
+    public Optional<Path> find(String name) {
+        return touch(name) ? Optional.of(directory.resolve(name)) : Optional.empty();
+    }
+
+    private boolean touch(String name) {
+        synchronized (sizes) {
+            if (sizes.get(name) == null) {
+                return false;
+            }
+        }
+        try {
+            Files.setLastModifiedTime(directory.resolve(name), FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (IOException exception) {
+            // evicted in the meantime
+            return false;
+        }
+    }
+
+    private Path store(String name, byte[] content) {
+        var file = directory.resolve(name);
+        try {
+            var temp = Files.createTempFile(directory, "artifact", TEMP_SUFFIX);
+            Files.write(temp, content);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        register(name, content.length);
+        evict();
+        return file;
+    }
+
+    private void register(String name, long size) {
+        synchronized (sizes) {
+            var previous = sizes.put(name, size);
+            totalBytes += size - (previous != null ? previous : 0);
+        }
+    }
+
+    private void evict() {
+        synchronized (sizes) {
+            var entries = sizes.entrySet().iterator();
+            while (totalBytes > maximumBytes && sizes.size() > 1 && entries.hasNext()) {
+                var entry = entries.next();
+                try {
+                    Files.deleteIfExists(directory.resolve(entry.getKey()));
+                } catch (IOException exception) {
+                    System.out.println("Deleting artifact " + entry.getKey() + " failed: " + exception.getMessage());
+                    continue;
+                }
+                totalBytes -= entry.getValue();
+                entries.remove();
+                meterRegistry.counter("artifacts.cache.evictions").increment();
+            }
+        }
+    }
+
+    private long totalBytes() {
+        synchronized (sizes) {
+            return totalBytes;
+        }
+    }
+
+    private static Path join(CompletableFuture<Path> generation) {
+        try {
+            return generation.join();
+        } catch (CompletionException exception) {
+            throw exception.getCause() instanceof RuntimeException cause ? cause : exception;
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+}
@@ -0,0 +1,13 @@
+package pl.training.ai.multimodel;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of {@link ArtifactCache}, bound from {@code artifact-cache}.
+ */
+@ConfigurationProperties("artifact-cache")
+public record ArtifactCacheProperties(Path directory, DataSize maximumSize) {
+}
@@ -7,45 +7,74 @@ import org.springframework.ai.openai.OpenAiAudioTranscriptionModel;
 import org.springframework.ai.openai.api.OpenAiAudioApi;
 import org.springframework.ai.openai.audio.speech.SpeechPrompt;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import pl.training.ai.chat.PromptRequest;
+import reactor.core.publisher.Flux;
 
 @RestController
 public class AudioController {
 
     private final OpenAiAudioSpeechModel openAiAudioSpeechModel;
     private final OpenAiAudioTranscriptionModel openAiAudioTranscriptionModel;
+    private final SpeechStreamer speechStreamer;
+    private final ArtifactCache artifactCache;
+    private final TranscriptionPipeline transcriptionPipeline;
 
     @Value("classpath:audio.mp3")
     private Resource audio;
 
-    public AudioController(OpenAiAudioSpeechModel openAiAudioSpeechModel, OpenAiAudioTranscriptionModel openAiAudioTranscriptionModel) {
+    public AudioController(OpenAiAudioSpeechModel openAiAudioSpeechModel, OpenAiAudioTranscriptionModel openAiAudioTranscriptionModel,
+                           SpeechStreamer speechStreamer, ArtifactCache artifactCache,
+                           TranscriptionPipeline transcriptionPipeline) {
         this.openAiAudioSpeechModel = openAiAudioSpeechModel;
         this.openAiAudioTranscriptionModel = openAiAudioTranscriptionModel;
+        this.speechStreamer = speechStreamer;
+        this.artifactCache = artifactCache;
+        this.transcriptionPipeline = transcriptionPipeline;
     }
 
+    // Identical text and options are served from the artifact cache, the file is streamed instead of loaded
     @GetMapping("generate-audio")
-    public ResponseEntity<byte[]> generateAudio(@RequestBody PromptRequest promptRequest) {
-        var options = OpenAiAudioSpeechOptions.builder()
+    public ResponseEntity<Resource> generateAudio(@RequestBody PromptRequest promptRequest) {
+        var options = speechOptions();
+        var key = ArtifactCache.key("speech", options.getModel(), options.getVoice(), options.getResponseFormat(),
+                options.getSpeed(), promptRequest.message());
+        var file = artifactCache.get(key, "mp3", () -> openAiAudioSpeechModel.call(new SpeechPrompt(promptRequest.message(), options))
+                .getResult()
+                .getOutput());
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, "audio/mpeg")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"audio.mp3\"")
+                .body(new FileSystemResource(file));
+    }
+
+    // Audio is written in chunks as the segments are synthesized, the response uses chunked transfer encoding
+    @GetMapping("generate-audio/stream")
+    public ResponseEntity<StreamingResponseBody> generateAudioStream(@RequestBody PromptRequest promptRequest) {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, "audio/mpeg")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"audio.mp3\"")
+                .body(speechStreamer.stream(promptRequest.message(), speechOptions()));
+    }
+
+    private OpenAiAudioSpeechOptions speechOptions() {
+        return OpenAiAudioSpeechOptions.builder()
                 .model("tts-1-hd")
                 .voice(OpenAiAudioApi.SpeechRequest.Voice.ALLOY)
                 .responseFormat(OpenAiAudioApi.SpeechRequest.AudioResponseFormat.MP3)
                 .speed(1.0f)
                 .build();
-
-        var speechPrompt = new SpeechPrompt(promptRequest.message(), options);
-        var bytes = openAiAudioSpeechModel.call(speechPrompt)
-                .getResult()
-                .getOutput();
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_TYPE, "audio/mpeg")
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"audio.mp3\"")
-                .body(bytes);
     }
 
     @GetMapping("transcription")
@@ -57,4 +86,17 @@ public class AudioController {
                 .getOutput();
     }
 
+    // Partial transcripts are sent as server-sent events as soon as the windows before them are transcribed
+    @GetMapping(value = "transcription/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> transcriptionStream() {
+        return transcriptionPipeline.transcribe(audio::getInputStream);
+    }
+
+    // The upload is read as a stream, window by window, and never loaded into memory as a whole
+    @PostMapping(value = "transcription/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> transcriptionUpload(@RequestParam MultipartFile file) {
+        return transcriptionPipeline.transcribe(file::getInputStream);
+    }
+
 }
@@ -0,0 +1,9 @@
+package pl.training.ai.multimodel;
+
+import java.util.List;
+
+/**
+ * Names of images in the local image store, relative to its directory.
+ */
+public record ImageBatch(List<String> images) {
+}
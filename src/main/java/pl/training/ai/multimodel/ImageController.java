@@ -8,29 +8,48 @@ import org.springframework.ai.openai.OpenAiImageModel;
 import org.springframework.ai.openai.OpenAiImageOptions;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.util.MimeType;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
 import pl.training.ai.chat.PromptRequest;
+import reactor.core.publisher.Flux;
 
-import java.util.Map;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
 
 @RestController
 public class ImageController {
 
     private final OpenAiImageModel openAiImageModel;
     private final ChatClient chatClient;
+    private final ArtifactCache artifactCache;
+    private final ImageDescriber imageDescriber;
 
     @Value("classpath:image.png")
     private Resource image;
 
-    public ImageController(OpenAiImageModel openAiImageModel, @Qualifier("openaiChatClient") ChatClient chatClient) {
+    private final Path imageStore;
+
+    public ImageController(OpenAiImageModel openAiImageModel, @Qualifier("openaiChatClient") ChatClient chatClient,
+                           ArtifactCache artifactCache, ImageDescriber imageDescriber,
+                           ImageStoreProperties imageStoreProperties) {
         this.openAiImageModel = openAiImageModel;
         this.chatClient = chatClient;
+        this.artifactCache = artifactCache;
+        this.imageDescriber = imageDescriber;
+        this.imageStore = imageStoreProperties.directory();
     }
 
     @GetMapping("generate-image")
@@ -41,13 +60,29 @@ public class ImageController {
                 .height(1024)
                 .quality("hd")
                 .style("natural")
+                .responseFormat("b64_json")
                 .build();
-        var imagePrompt = new ImagePrompt(promptRequest.message(), options);
-        return openAiImageModel.call(imagePrompt)
-                .getResult()
-                .getOutput()
-                // .getB64Json()
-                .getUrl();
+        var key = ArtifactCache.key("image", options.getModel(), options.getWidth(), options.getHeight(),
+                options.getQuality(), options.getStyle(), promptRequest.message());
+        // the image is kept in the artifact cache, OpenAI URLs expire after an hour
+        var file = artifactCache.get(key, "png", () -> {
+            var imagePrompt = new ImagePrompt(promptRequest.message(), options);
+            var b64Json = openAiImageModel.call(imagePrompt)
+                    .getResult()
+                    .getOutput()
+                    .getB64Json();
+            return Base64.getDecoder().decode(b64Json);
+        });
+        return "/artifacts/" + file.getFileName();
+    }
+
+    @GetMapping("artifacts/{name}")
+    public ResponseEntity<Resource> artifact(@PathVariable String name) {
+        return artifactCache.find(name)
+                .map(file -> ResponseEntity.ok()
+                        .contentType(MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM))
+                        .<Resource>body(new FileSystemResource(file)))
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @GetMapping("generate-description")
@@ -62,4 +97,38 @@ public class ImageController {
                 .content();
     }
 
+    // Each line of the response is the description of one image, written as soon as that image is done
+    @PostMapping(value = "describe-images", consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ImageDescriber.Description> describeUploadedImages(@RequestParam List<MultipartFile> files) {
+        var images = Flux.fromIterable(files)
+                .map(file -> new ImageDescriber.Image(file.getOriginalFilename(),
+                        mimeType(file.getOriginalFilename(), file.getContentType()), file::getBytes));
+        return imageDescriber.describe(images);
+    }
+
+    @PostMapping(value = "describe-images", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ImageDescriber.Description> describeStoredImages(@RequestBody ImageBatch imageBatch) {
+        var images = Flux.fromIterable(imageBatch.images())
+                .map(name -> new ImageDescriber.Image(name, mimeType(name, null), () -> Files.readAllBytes(storedImage(name))));
+        return imageDescriber.describe(images);
+    }
+
+    private Path storedImage(String name) {
+        var directory = imageStore.toAbsolutePath().normalize();
+        var file = directory.resolve(name).normalize();
+        if (!file.startsWith(directory)) {
+            throw new IllegalArgumentException("Image outside of the image store: " + name);
+        }
+        return file;
+    }
+
+    private static MimeType mimeType(String name, String contentType) {
+        if (contentType != null && contentType.startsWith("image/")) {
+            return MimeType.valueOf(contentType);
+        }
+        return MediaTypeFactory.getMediaType(name).orElse(MediaType.IMAGE_PNG);
+    }
+
 }
@@ -0,0 +1,156 @@
+package pl.training.ai.multimodel;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.MimeType;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import pl.training.ai.Hashes;
+import pl.training.ai.PromptTemplates;
+import pl.training.ai.chat.AdvisorParams;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Describes batches of images with a vision model. Up to {@code concurrency} images are described at once and every
+ * result is emitted as soon as it is ready, in completion order. Descriptions are checkpointed in the
+ * {@code image_description} table by the hash of the prompt and the image content, so a rerun of the batch only
+ * describes the images that are missing. A transient failure (such as a rate limit) pauses all workers, not just the
+ * failing one, with an exponential, jittered backoff; an image that still fails is reported and left for the next run.
+ */
+public class ImageDescriber {
+
+    private static final String ENDPOINT = "image-description";
+
+    private final ChatClient chatClient;
+    private final JdbcTemplate jdbcTemplate;
+    private final Scheduler jdbcScheduler;
+    private final PromptTemplates promptTemplates;
+    private final int concurrency;
+    private final int maxRetries;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final MeterRegistry meterRegistry;
+    private final AtomicLong pausedUntil = new AtomicLong();
+
+    public ImageDescriber(ChatClient chatClient, JdbcTemplate jdbcTemplate, Scheduler jdbcScheduler,
+                          PromptTemplates promptTemplates, int concurrency, int maxRetries, Duration initialBackoff,
+                          Duration maxBackoff, MeterRegistry meterRegistry) {
+        this.chatClient = chatClient;
+        this.jdbcTemplate = jdbcTemplate;
+        this.jdbcScheduler = jdbcScheduler;
+        this.promptTemplates = promptTemplates;
+        this.concurrency = concurrency;
+        this.maxRetries = maxRetries;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public Flux<Description> describe(Flux<Image> images) {
+        return images.flatMap(this::describe, concurrency);
+    }
+
+    private Mono<Description> describe(Image image) {
+        // the image is read only once it is in flight, so a batch never holds more than concurrency images
+        return Mono.fromCallable(image.content())
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(content -> {
+                    var prompt = promptTemplates.renderOnce(ENDPOINT, Map.of());
+                    var fingerprint = Hashes.sha256(prompt + '\u0000' + Hashes.sha256(content));
+                    return findDescription(fingerprint)
+                            .map(description -> new Description(image.name(), Status.SKIPPED, description, null))
+                            .switchIfEmpty(Mono.defer(() -> call(prompt, image, content)
+                                    .flatMap(description -> saveDescription(fingerprint, image.name(), description)
+                                            .thenReturn(new Description(image.name(), Status.DESCRIBED, description, null)))));
+                })
+                .onErrorResume(exception -> Mono.just(
+                        new Description(image.name(), Status.FAILED, null, String.valueOf(exception.getMessage()))))
+                .doOnNext(description -> meterRegistry.counter("images.description", "status", description.status().name())
+                        .increment());
+    }
+
+    private Mono<String> call(String prompt, Image image, byte[] content) {
+        return Mono.defer(() -> Mono.delay(pause())
+                        .then(Mono.fromCallable(() -> chatClient.prompt()
+                                        .user(spec -> spec
+                                                .text(prompt)
+                                                .media(image.mimeType(), new ByteArrayResource(content)))
+                                        .advisors(advisor -> advisor.param(AdvisorParams.ENDPOINT, ENDPOINT))
+                                        .call()
+                                        .content())
+                                .defaultIfEmpty("")
+                                .subscribeOn(Schedulers.boundedElastic())))
+                .retryWhen(Retry.max(maxRetries)
+                        .filter(ImageDescriber::isTransient)
+                        .doBeforeRetry(signal -> backOff(signal.totalRetries())));
+    }
+
+    // server errors surface as transient exceptions, a full bulkhead as 503; Spring AI reports a rate limit as a
+    // non-transient exception with the status at the start of the message, or as the HTTP client's exception
+    static boolean isTransient(Throwable exception) {
+        for (var cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientAiException
+                    || cause instanceof NonTransientAiException && String.valueOf(cause.getMessage()).startsWith("429")
+                    || cause instanceof RestClientResponseException clientError && clientError.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS
+                    || cause instanceof ResponseStatusException statusError && statusError.getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // every worker waits until the pause set by the last transient failure is over
+    private Duration pause() {
+        return Duration.ofMillis(Math.max(0, pausedUntil.get() - System.currentTimeMillis()));
+    }
+
+    private void backOff(long retries) {
+        var backoff = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(retries, 20));
+        var jittered = (long) (backoff * ThreadLocalRandom.current().nextDouble(0.75, 1.25));
+        pausedUntil.accumulateAndGet(System.currentTimeMillis() + jittered, Math::max);
+        meterRegistry.counter("images.description.retries").increment();
+    }
+
+    private Mono<String> findDescription(String fingerprint) {
+        return Mono.fromCallable(() -> jdbcTemplate.queryForList(
+                        "select description from image_description where fingerprint = ?", String.class, fingerprint))
+                .subscribeOn(jdbcScheduler)
+                .flatMap(descriptions -> Mono.justOrEmpty(descriptions.stream().findFirst()));
+    }
+
+    private Mono<Void> saveDescription(String fingerprint, String name, String description) {
+        return Mono.fromRunnable(() -> jdbcTemplate.update(
+                        "insert into image_description (fingerprint, name, description) values (?, ?, ?) on conflict (fingerprint) do nothing",
+                        fingerprint, name, description))
+                .subscribeOn(jdbcScheduler)
+                .then();
+    }
+
+    public record Image(String name, MimeType mimeType, Callable<byte[]> content) {
+    }
+
+    public record Description(String name, Status status, String description, String error) {
+    }
+
+    public enum Status {
+
+        DESCRIBED, SKIPPED, FAILED
+
+    }
+
+}
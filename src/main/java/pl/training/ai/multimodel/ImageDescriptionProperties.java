@@ -0,0 +1,12 @@
+package pl.training.ai.multimodel;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of {@link ImageDescriber}, bound from {@code image-description}.
+ */
+@ConfigurationProperties("image-description")
+public record ImageDescriptionProperties(int concurrency, int maxRetries, Duration initialBackoff, Duration maxBackoff) {
+}
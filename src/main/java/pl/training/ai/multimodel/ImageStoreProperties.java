@@ -0,0 +1,12 @@
+package pl.training.ai.multimodel;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of the image store read by {@link ImageController}, bound from {@code image-store}.
+ */
+@ConfigurationProperties("image-store")
+public record ImageStoreProperties(Path directory) {
+}
@@ -0,0 +1,188 @@
+package pl.training.ai.multimodel;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.content.Media;
+import org.springframework.core.Ordered;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import pl.training.ai.Hashes;
+import reactor.core.publisher.Flux;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Shrinks images attached to prompts before they are sent. Vision models scale every image down to a fixed
+ * resolution anyway (OpenAI fits it into 2048x2048 and then its shorter side into 768 pixels), so the image is decoded,
+ * scaled to that size and re-encoded as JPEG, which cuts the upload, the base64 encoding and the request size. The
+ * result is cached by the content hash and the target size, so a repeatedly attached image is prepared once. Images
+ * that cannot be decoded, or get no smaller, are sent unchanged.
+ */
+public class MediaPreparationAdvisor implements CallAdvisor, StreamAdvisor {
+
+    private static final MimeType IMAGE = MimeType.valueOf("image/*");
+
+    private final int maxLongSide;
+    private final int maxShortSide;
+    private final float quality;
+    private final Cache<String, Prepared> cache;
+    private final Timer preparationTimer;
+    private final Counter bytesSaved;
+
+    public MediaPreparationAdvisor(int maxLongSide, int maxShortSide, float quality, long maximumCachedBytes,
+                                   MeterRegistry meterRegistry) {
+        this.maxLongSide = maxLongSide;
+        this.maxShortSide = maxShortSide;
+        this.quality = quality;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumCachedBytes)
+                .<String, Prepared>weigher((key, prepared) -> prepared.data().length)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "media");
+        this.preparationTimer = Timer.builder("chat.media.preparation")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.bytesSaved = meterRegistry.counter("chat.media.bytes.saved");
+    }
+
+    @Override
+    public String getName() {
+        return MediaPreparationAdvisor.class.getSimpleName();
+    }
+
+    @Override
+    public int getOrder() {
+        // after chat memory advisors stored the original message, before the prompt layout
+        return Ordered.LOWEST_PRECEDENCE - 300;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain callAdvisorChain) {
+        return callAdvisorChain.nextCall(prepare(chatClientRequest));
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain streamAdvisorChain) {
+        return streamAdvisorChain.nextStream(prepare(chatClientRequest));
+    }
+
+    private ChatClientRequest prepare(ChatClientRequest chatClientRequest) {
+        var prompt = chatClientRequest.prompt();
+        var changed = false;
+        var messages = new ArrayList<Message>(prompt.getInstructions().size());
+        for (var message : prompt.getInstructions()) {
+            if (message instanceof UserMessage userMessage && !userMessage.getMedia().isEmpty()) {
+                var media = userMessage.getMedia().stream().map(this::prepare).toList();
+                messages.add(UserMessage.builder()
+                        .text(userMessage.getText())
+                        .media(media)
+                        .metadata(userMessage.getMetadata())
+                        .build());
+                changed = true;
+            } else {
+                messages.add(message);
+            }
+        }
+        if (!changed) {
+            return chatClientRequest;
+        }
+        return chatClientRequest.mutate()
+                .prompt(new Prompt(messages, prompt.getOptions()))
+                .build();
+    }
+
+    private Media prepare(Media media) {
+        // URLs are fetched by the provider, only inline images can be shrunk
+        if (!IMAGE.includes(media.getMimeType()) || !(media.getData() instanceof byte[] data)) {
+            return media;
+        }
+        var key = Hashes.sha256(data) + ":" + maxLongSide + "x" + maxShortSide + ":" + quality;
+        var prepared = cache.get(key, ignored -> preparationTimer.record(() -> shrink(data, media.getMimeType())));
+        if (prepared.data() == data) {
+            return media;
+        }
+        bytesSaved.increment(data.length - prepared.data().length);
+        return Media.builder()
+                .mimeType(prepared.mimeType())
+                .data(prepared.data())
+                .name(media.getName())
+                .build();
+    }
+
+    private Prepared shrink(byte[] data, MimeType mimeType) {
+        var unchanged = new Prepared(mimeType, data);
+        try {
+            var image = ImageIO.read(new ByteArrayInputStream(data));
+            if (image == null) {
+                return unchanged;
+            }
+            var jpeg = encode(scale(image));
+            return jpeg.length < data.length ? new Prepared(MimeTypeUtils.IMAGE_JPEG, jpeg) : unchanged;
+        } catch (IOException exception) {
+            System.out.println("Preparing image failed: " + exception.getMessage());
+            return unchanged;
+        }
+    }
+
+    // JPEG has no alpha channel, so the image is always drawn onto an opaque white canvas
+    private BufferedImage scale(BufferedImage image) {
+        var longSide = Math.max(image.getWidth(), image.getHeight());
+        var shortSide = Math.min(image.getWidth(), image.getHeight());
+        var factor = Math.min(1.0, Math.min((double) maxLongSide / longSide, (double) maxShortSide / shortSide));
+        var width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        var height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+        var scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        var graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    private byte[] encode(BufferedImage image) throws IOException {
+        var writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        var output = new ByteArrayOutputStream();
+        try (var imageOutput = new MemoryCacheImageOutputStream(output)) {
+            var parameters = writer.getDefaultWriteParam();
+            parameters.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            parameters.setCompressionQuality(quality);
+            writer.setOutput(imageOutput);
+            writer.write(null, new IIOImage(image, null, null), parameters);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+
+    private record Prepared(MimeType mimeType, byte[] data) {
+    }
+
+}
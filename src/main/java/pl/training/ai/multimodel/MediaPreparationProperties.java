@@ -0,0 +1,15 @@
+package pl.training.ai.multimodel;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Settings of {@link MediaPreparationAdvisor}, bound from {@code media-preparation}.
+ */
+@ConfigurationProperties("media-preparation")
+public record MediaPreparationProperties(int maxLongSide, int maxShortSide, float quality, Cache cache) {
+
+    public record Cache(DataSize maximumSize) {
+    }
+
+}
@@ -0,0 +1,157 @@
+package pl.training.ai.multimodel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+
+/**
+ * Cuts an MP3 stream at frame boundaries into windows of a fixed duration, each starting with the last
+ * {@code overlap} seconds of the previous one. Frames are self-contained, so every window is a playable file and the
+ * audio never has to be decoded. Only one window is held in memory. An ID3v2 tag at the start and anything between
+ * frames that is not an MPEG layer III header is skipped.
+ */
+final class Mp3Segmenter implements AutoCloseable {
+
+    private static final int HEADER_LENGTH = 4;
+    private static final int ID3_HEADER_LENGTH = 10;
+    private static final int[] MPEG1_BITRATES = {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320};
+    private static final int[] MPEG2_BITRATES = {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160};
+    private static final int[][] SAMPLE_RATES = {{11025, 12000, 8000}, {}, {22050, 24000, 16000}, {44100, 48000, 32000}};
+
+    private final PushbackInputStream input;
+    private final double windowSeconds;
+    private final double overlapSeconds;
+    private final Deque<Frame> tail = new ArrayDeque<>();
+    private double tailSeconds;
+    private double position;
+    private int index;
+    private boolean finished;
+
+    Mp3Segmenter(InputStream input, double windowSeconds, double overlapSeconds) throws IOException {
+        // a window holding nothing but the overlap would never move forward
+        if (overlapSeconds >= windowSeconds) {
+            throw new IllegalArgumentException("Overlap of " + overlapSeconds + "s must be shorter than the window of " + windowSeconds + "s");
+        }
+        this.input = new PushbackInputStream(input, ID3_HEADER_LENGTH);
+        this.windowSeconds = windowSeconds;
+        this.overlapSeconds = overlapSeconds;
+        skipId3Tag();
+    }
+
+    /**
+     * @return the next window or {@code null} at the end of the stream
+     */
+    Segment next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        var audio = new ByteArrayOutputStream();
+        var overlap = new ArrayList<>(tail);
+        var duration = 0.0;
+        for (var frame : overlap) {
+            audio.write(frame.data());
+            duration += frame.seconds();
+        }
+        var start = position - duration;
+        var newFrames = 0;
+        while (duration < windowSeconds) {
+            var frame = readFrame();
+            if (frame == null) {
+                finished = true;
+                break;
+            }
+            audio.write(frame.data());
+            duration += frame.seconds();
+            position += frame.seconds();
+            newFrames++;
+            remember(frame);
+        }
+        return newFrames > 0 ? new Segment(index++, start, audio.toByteArray()) : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private void remember(Frame frame) {
+        tail.addLast(frame);
+        tailSeconds += frame.seconds();
+        while (tailSeconds - tail.getFirst().seconds() >= overlapSeconds) {
+            tailSeconds -= tail.removeFirst().seconds();
+        }
+    }
+
+    private void skipId3Tag() throws IOException {
+        var header = new byte[ID3_HEADER_LENGTH];
+        var read = input.readNBytes(header, 0, header.length);
+        if (read == ID3_HEADER_LENGTH && header[0] == 'I' && header[1] == 'D' && header[2] == '3') {
+            // the tag size is a 28-bit "syncsafe" integer, 7 bits per byte
+            var size = (header[6] & 0x7F) << 21 | (header[7] & 0x7F) << 14 | (header[8] & 0x7F) << 7 | (header[9] & 0x7F);
+            input.skipNBytes(size);
+        } else {
+            input.unread(header, 0, read);
+        }
+    }
+
+    private Frame readFrame() throws IOException {
+        var header = new byte[HEADER_LENGTH];
+        if (input.readNBytes(header, 0, HEADER_LENGTH) < HEADER_LENGTH) {
+            return null;
+        }
+        while (true) {
+            var frame = parseHeader(header);
+            if (frame != null) {
+                var data = new byte[frame.length()];
+                System.arraycopy(header, 0, data, 0, HEADER_LENGTH);
+                var remaining = frame.length() - HEADER_LENGTH;
+                if (input.readNBytes(data, HEADER_LENGTH, remaining) < remaining) {
+                    return null;
+                }
+                return new Frame(data, frame.seconds());
+            }
+            // not a frame header, look for the next sync word one byte further
+            System.arraycopy(header, 1, header, 0, HEADER_LENGTH - 1);
+            var next = input.read();
+            if (next < 0) {
+                return null;
+            }
+            header[HEADER_LENGTH - 1] = (byte) next;
+        }
+    }
+
+    private static FrameHeader parseHeader(byte[] header) {
+        var bits = (header[0] & 0xFF) << 24 | (header[1] & 0xFF) << 16 | (header[2] & 0xFF) << 8 | (header[3] & 0xFF);
+        if ((bits & 0xFFE00000) != 0xFFE00000) {
+            return null;
+        }
+        var version = bits >>> 19 & 0x3;
+        var layer = bits >>> 17 & 0x3;
+        var bitrateIndex = bits >>> 12 & 0xF;
+        var sampleRateIndex = bits >>> 10 & 0x3;
+        var padding = bits >>> 9 & 0x1;
+        if (version == 1 || layer != 1 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+            return null;
+        }
+        var mpeg1 = version == 3;
+        var bitrate = (mpeg1 ? MPEG1_BITRATES : MPEG2_BITRATES)[bitrateIndex] * 1000;
+        var sampleRate = SAMPLE_RATES[version][sampleRateIndex];
+        var samples = mpeg1 ? 1152 : 576;
+        var length = samples / 8 * bitrate / sampleRate + padding;
+        return new FrameHeader(length, (double) samples / sampleRate);
+    }
+
+    record Segment(int index, double startSeconds, byte[] audio) {
+    }
+
+    private record FrameHeader(int length, double seconds) {
+    }
+
+    private record Frame(byte[] data, double seconds) {
+    }
+
+}
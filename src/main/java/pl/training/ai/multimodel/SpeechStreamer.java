@@ -0,0 +1,90 @@
+package pl.training.ai.multimodel;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.openai.OpenAiAudioSpeechModel;
+import org.springframework.ai.openai.OpenAiAudioSpeechOptions;
+import org.springframework.ai.openai.audio.speech.SpeechPrompt;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synthesizes long texts segment by segment. The text is split at sentence boundaries into segments of at most
+ * {@code maxSegmentChars}, up to {@code concurrency} segments are synthesized at once and their audio is written in
+ * the original order as soon as it arrives, so the first segment plays while the next ones are still generated and
+ * a request never holds more than the segments in flight. MP3 frames are self-contained, so the segments can simply
+ * be concatenated.
+ */
+public class SpeechStreamer {
+
+    private final OpenAiAudioSpeechModel speechModel;
+    private final int maxSegmentChars;
+    private final int concurrency;
+    private final Timer timeToFirstAudio;
+
+    public SpeechStreamer(OpenAiAudioSpeechModel speechModel, int maxSegmentChars, int concurrency, MeterRegistry meterRegistry) {
+        this.speechModel = speechModel;
+        this.maxSegmentChars = maxSegmentChars;
+        this.concurrency = concurrency;
+        this.timeToFirstAudio = Timer.builder("audio.speech.ttfa")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    public StreamingResponseBody stream(String text, OpenAiAudioSpeechOptions options) {
+        var segments = split(text, maxSegmentChars);
+        return outputStream -> {
+            var start = System.nanoTime();
+            var first = true;
+            // closing the stream cancels the synthesis, also when a write fails because the client went away
+            try (var chunks = Flux.fromIterable(segments)
+                    .flatMapSequential(segment -> speechModel.stream(new SpeechPrompt(segment, options)), concurrency, 1)
+                    .map(response -> response.getResult().getOutput())
+                    .toStream(1)) {
+                for (var iterator = chunks.iterator(); iterator.hasNext(); ) {
+                    var chunk = iterator.next();
+                    if (first) {
+                        timeToFirstAudio.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        first = false;
+                    }
+                    outputStream.write(chunk);
+                    outputStream.flush();
+                }
+            }
+        };
+    }
+
+    static List<String> split(String text, int maxSegmentChars) {
+        var segments = new ArrayList<String>();
+        var segment = new StringBuilder();
+        var sentences = BreakIterator.getSentenceInstance(Locale.ROOT);
+        sentences.setText(text);
+        var start = sentences.first();
+        for (var end = sentences.next(); end != BreakIterator.DONE; start = end, end = sentences.next()) {
+            var sentence = text.substring(start, end);
+            if (segment.length() + sentence.length() > maxSegmentChars && !segment.isEmpty()) {
+                segments.add(segment.toString().strip());
+                segment.setLength(0);
+            }
+            // a single sentence over the limit is cut at the last whitespace that fits
+            while (sentence.length() > maxSegmentChars) {
+                var cut = sentence.lastIndexOf(' ', maxSegmentChars);
+                cut = cut > 0 ? cut : maxSegmentChars;
+                segments.add(sentence.substring(0, cut).strip());
+                sentence = sentence.substring(cut);
+            }
+            segment.append(sentence);
+        }
+        if (!segment.toString().isBlank()) {
+            segments.add(segment.toString().strip());
+        }
+        return segments;
+    }
+
+}
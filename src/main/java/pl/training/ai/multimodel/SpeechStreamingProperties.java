@@ -0,0 +1,10 @@
+package pl.training.ai.multimodel;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of {@link SpeechStreamer}, bound from {@code speech-streaming}.
+ */
+@ConfigurationProperties("speech-streaming")
+public record SpeechStreamingProperties(int maxSegmentChars, int concurrency) {
+}
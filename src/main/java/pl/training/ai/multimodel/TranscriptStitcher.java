@@ -0,0 +1,63 @@
+package pl.training.ai.multimodel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Joins the transcripts of overlapping audio windows, in order. The words of the overlap appear at the end of one
+ * transcript and at the start of the next one, possibly with a cut-off word around them, so the longest run of
+ * words shared by the end of the text so far and the start of the new transcript is located (ignoring case and
+ * punctuation) and everything up to its end is dropped from the new transcript.
+ */
+final class TranscriptStitcher {
+
+    private static final int COMPARED_WORDS = 40;
+    private static final int HEAD_WORDS = 20;
+    private static final int MINIMUM_MATCH = 3;
+
+    private final List<String> tail = new ArrayList<>();
+
+    /**
+     * @return the part of the transcript that is not a repetition of the overlap
+     */
+    String append(String transcript) {
+        var words = transcript.strip().split("\\s+");
+        if (words.length == 1 && words[0].isEmpty()) {
+            return "";
+        }
+        var normalized = Arrays.stream(words).map(TranscriptStitcher::normalize).toList();
+        var skipped = overlapEnd(normalized);
+        for (var index = skipped; index < normalized.size(); index++) {
+            tail.add(normalized.get(index));
+        }
+        if (tail.size() > COMPARED_WORDS) {
+            tail.subList(0, tail.size() - COMPARED_WORDS).clear();
+        }
+        return String.join(" ", Arrays.asList(words).subList(skipped, words.length));
+    }
+
+    // end (exclusive) of the longest common run of words between the tail and the head of the new transcript
+    private int overlapEnd(List<String> words) {
+        var head = words.subList(0, Math.min(words.size(), HEAD_WORDS));
+        var bestLength = 0;
+        var bestEnd = 0;
+        var runs = new int[head.size() + 1];
+        for (var tailWord : tail) {
+            for (var index = head.size(); index > 0; index--) {
+                runs[index] = !tailWord.isEmpty() && tailWord.equals(head.get(index - 1)) ? runs[index - 1] + 1 : 0;
+                if (runs[index] > bestLength) {
+                    bestLength = runs[index];
+                    bestEnd = index;
+                }
+            }
+        }
+        return bestLength >= MINIMUM_MATCH ? bestEnd : 0;
+    }
+
+    private static String normalize(String word) {
+        return word.replaceAll("[^\\p{L}\\p{N}]", "").toLowerCase(Locale.ROOT);
+    }
+
+}
@@ -0,0 +1,103 @@
+package pl.training.ai.multimodel;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.audio.transcription.AudioTranscriptionPrompt;
+import org.springframework.ai.openai.OpenAiAudioTranscriptionModel;
+import org.springframework.core.io.ByteArrayResource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+/**
+ * Transcribes long MP3 recordings in overlapping windows. The audio is read as a stream and cut into windows that
+ * stay far below the upload limit, up to {@code concurrency} windows are transcribed at once and the transcripts are
+ * emitted in order as soon as all earlier ones are done, with the repeated words of each overlap removed. Silence
+ * detection would need decoding the audio, so the windows have a fixed duration and the overlap protects the words
+ * cut at the boundaries.
+ */
+public class TranscriptionPipeline {
+
+    private final OpenAiAudioTranscriptionModel transcriptionModel;
+    private final Duration window;
+    private final Duration overlap;
+    private final int concurrency;
+    private final Timer segmentTimer;
+
+    public TranscriptionPipeline(OpenAiAudioTranscriptionModel transcriptionModel, Duration window, Duration overlap,
+                                 int concurrency, MeterRegistry meterRegistry) {
+        if (overlap.compareTo(window) >= 0) {
+            throw new IllegalArgumentException("Overlap of " + overlap + " must be shorter than the window of " + window);
+        }
+        this.transcriptionModel = transcriptionModel;
+        this.window = window;
+        this.overlap = overlap;
+        this.concurrency = concurrency;
+        this.segmentTimer = Timer.builder("audio.transcription.segment")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    public Flux<String> transcribe(Callable<InputStream> audio) {
+        var windowSeconds = window.toMillis() / 1000.0;
+        var overlapSeconds = overlap.toMillis() / 1000.0;
+        // segments are read on demand, so only the windows being transcribed are held in memory
+        var segments = Flux.<Mp3Segmenter.Segment, Mp3Segmenter>generate(
+                () -> new Mp3Segmenter(audio.call(), windowSeconds, overlapSeconds),
+                (segmenter, sink) -> {
+                    try {
+                        var segment = segmenter.next();
+                        if (segment != null) {
+                            sink.next(segment);
+                        } else {
+                            sink.complete();
+                        }
+                    } catch (IOException exception) {
+                        sink.error(new UncheckedIOException(exception));
+                    }
+                    return segmenter;
+                },
+                this::close);
+        return Flux.defer(() -> {
+            var stitcher = new TranscriptStitcher();
+            return segments
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMapSequential(segment -> Mono.fromCallable(() -> transcribe(segment))
+                            .subscribeOn(Schedulers.boundedElastic()), concurrency, 1)
+                    .map(stitcher::append)
+                    .filter(text -> !text.isEmpty());
+        });
+    }
+
+    private String transcribe(Mp3Segmenter.Segment segment) {
+        return segmentTimer.record(() -> {
+            var resource = new ByteArrayResource(segment.audio()) {
+
+                @Override
+                public String getFilename() {
+                    return "segment-" + segment.index() + ".mp3";
+                }
+
+            };
+            var text = transcriptionModel.call(new AudioTranscriptionPrompt(resource))
+                    .getResult()
+                    .getOutput();
+            return text != null ? text : "";
+        });
+    }
+
+    private void close(Mp3Segmenter segmenter) {
+        try {
+            segmenter.close();
+        } catch (IOException exception) {
+            System.out.println("Closing the transcribed audio failed: " + exception.getMessage());
+        }
+    }
+
+}
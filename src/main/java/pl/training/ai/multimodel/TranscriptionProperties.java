@@ -0,0 +1,12 @@
+package pl.training.ai.multimodel;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of {@link TranscriptionPipeline}, bound from {@code transcription}.
+ */
+@ConfigurationProperties("transcription")
+public record TranscriptionProperties(Duration window, Duration overlap, int concurrency) {
+}
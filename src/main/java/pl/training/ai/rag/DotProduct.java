@@ -0,0 +1,28 @@
+package pl.training.ai.rag;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+interface DotProduct {
+
+    ValueLayout.OfFloat FLOAT = ValueLayout.JAVA_FLOAT.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    float dot(MemorySegment segment, long offset, float[] query);
+
+    /**
+     * Uses the SIMD implementation when {@code jdk.incubator.vector} is resolved at runtime
+     * ({@code --add-modules jdk.incubator.vector}), otherwise falls back to scalar code.
+     */
+    static DotProduct create() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return new SimdDotProduct();
+            } catch (LinkageError error) {
+                return new ScalarDotProduct();
+            }
+        }
+        return new ScalarDotProduct();
+    }
+
+}
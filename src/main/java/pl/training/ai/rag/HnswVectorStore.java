@@ -0,0 +1,727 @@
+package pl.training.ai.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.core.io.Resource;
+
+import java.io.*;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import static pl.training.ai.rag.DotProduct.FLOAT;
+
+/**
+ * In-memory HNSW graph over normalized vectors kept in off-heap chunks. Inserts and deletes may run concurrently
+ * with searches; deletes are tombstones that stay in the graph for routing until they exceed
+ * {@code maxDeletedRatio} of the nodes, then the graph is rebuilt from the live ones (searches wait for the rebuild).
+ * The graph is persisted in a {@code .hnsw} file next to the {@code .vec}/{@code .docs} snapshot, so a restart does not
+ * rebuild it, unless the graph belongs to another commit of the snapshot; a rebuild leaves the deleted documents out.
+ * New documents are appended to the snapshot, tombstones rewrite its documents file, and the graph file is rewritten
+ * on every save.
+ */
+public class HnswVectorStore implements LocalVectorStore {
+
+    private static final int GRAPH_MAGIC = 0x484E5357; // HNSW
+    private static final int GRAPH_VERSION = 2;
+    private static final int GRAPH_HEADER_SIZE = 20;
+    private static final int CHUNK_SIZE = 1024;
+    private static final DotProduct DOT_PRODUCT = DotProduct.create();
+
+    public record Parameters(int m, int efConstruction, int efSearch, double maxDeletedRatio) {
+    }
+
+    private final EmbeddingModel embeddingModel;
+    private final Parameters parameters;
+    private final double levelMultiplier;
+    private final Path vectorsFile;
+    private final Path documentsFile;
+    private final Path graphFile;
+    private final MetadataFilters metadataFilters = new MetadataFilters();
+    private final Map<String, Integer> slotsById = new ConcurrentHashMap<>();
+    private final Object structureLock = new Object();
+    private final Object saveLock = new Object();
+    private final ReentrantReadWriteLock compactionLock = new ReentrantReadWriteLock();
+    private final AtomicInteger deleted = new AtomicInteger();
+    private volatile boolean deletedSinceSave;
+
+    private volatile Node[] nodes = new Node[16];
+    private volatile int size;
+    private volatile EntryPoint entryPoint;
+    private long generation;
+    private int committed;
+    private int dimensions;
+    private MemorySegment chunk;
+    private int chunkUsed;
+
+    public HnswVectorStore(EmbeddingModel embeddingModel, Parameters parameters, Path directory, String name) {
+        this.embeddingModel = embeddingModel;
+        this.parameters = parameters;
+        this.levelMultiplier = 1 / Math.log(parameters.m());
+        this.vectorsFile = directory.resolve(name + ".vec");
+        this.documentsFile = directory.resolve(name + ".docs");
+        this.graphFile = directory.resolve(name + ".hnsw");
+    }
+
+    @Override
+    public boolean exists() {
+        return Files.exists(vectorsFile) && Files.exists(documentsFile);
+    }
+
+    @Override
+    public void load() throws IOException {
+        var snapshot = Snapshots.read(vectorsFile, documentsFile);
+        var vectors = snapshot.vectors();
+        var documents = snapshot.documents();
+        generation = vectors.generation();
+        if (!graphMatches(vectors)) {
+            System.out.println("Building HNSW graph");
+            for (int slot = 0; slot < vectors.count(); slot++) {
+                if (!snapshot.deleted().get(slot)) {
+                    insert(documents.get(slot), vectors.vector(slot));
+                }
+            }
+            save();
+            return;
+        }
+        var vectorSize = (long) vectors.dimensions() * Float.BYTES;
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(graphFile)))) {
+            input.skipNBytes(GRAPH_HEADER_SIZE);
+            var entrySlot = input.readInt();
+            var entryLevel = input.readInt();
+            synchronized (structureLock) {
+                dimensions = vectors.dimensions();
+                var loaded = new Node[Math.max(16, vectors.count())];
+                for (int slot = 0; slot < vectors.count(); slot++) {
+                    var deleted = input.readBoolean();
+                    var level = input.readInt();
+                    var node = new Node(documents.get(slot), vectors.region().asSlice(slot * vectorSize, vectorSize), level);
+                    for (int layer = 0; layer <= level; layer++) {
+                        var neighbors = new int[input.readInt()];
+                        for (int index = 0; index < neighbors.length; index++) {
+                            neighbors[index] = input.readInt();
+                        }
+                        node.neighbors.set(layer, neighbors);
+                    }
+                    node.deleted = deleted;
+                    if (deleted) {
+                        this.deleted.incrementAndGet();
+                    } else {
+                        slotsById.put(node.document.id(), slot);
+                    }
+                    loaded[slot] = node;
+                }
+                nodes = loaded;
+                size = vectors.count();
+                entryPoint = entrySlot < 0 ? null : new EntryPoint(entrySlot, entryLevel);
+            }
+        }
+        committed = vectors.count();
+    }
+
+    @Override
+    public void importJson(Resource resource) throws IOException {
+        var imported = Snapshots.readJson(resource);
+        for (int index = 0; index < imported.documents().size(); index++) {
+            insert(imported.documents().get(index), imported.embeddings().get(index));
+        }
+        save();
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        var embeddings = embeddingModel.embed(documents.stream().map(Document::getText).toList());
+        for (int index = 0; index < documents.size(); index++) {
+            insert(StoredDocument.of(documents.get(index)), embeddings.get(index));
+        }
+        compactIfNeeded();
+        save();
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        var changed = false;
+        compactionLock.readLock().lock();
+        try {
+            for (var id : idList) {
+                var slot = slotsById.remove(id);
+                if (slot != null) {
+                    markDeleted(slot);
+                    changed = true;
+                }
+            }
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+        if (changed) {
+            compactIfNeeded();
+            save();
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        var filter = metadataFilters.compile(filterExpression);
+        var ids = new ArrayList<String>();
+        compactionLock.readLock().lock();
+        try {
+            for (int slot = 0; slot < size; slot++) {
+                var node = node(slot);
+                if (!node.deleted && filter.test(node.document.metadata())) {
+                    ids.add(node.document.id());
+                }
+            }
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+        delete(ids);
+    }
+
+    @Override
+    public Set<String> findIds(String metadataKey, Object value) {
+        var ids = new HashSet<String>();
+        compactionLock.readLock().lock();
+        try {
+            for (int slot = 0; slot < size; slot++) {
+                var node = node(slot);
+                if (!node.deleted && Objects.equals(node.document.metadata().get(metadataKey), value)) {
+                    ids.add(node.document.id());
+                }
+            }
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+        return ids;
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        var query = VectorIndex.normalize(embeddingModel.embed(request.getQuery()));
+        var filter = request.hasFilterExpression() ? metadataFilters.compile(request.getFilterExpression()) : null;
+        return search(query, request.getTopK(), request.getSimilarityThreshold(), parameters.efSearch(), filter == null ? null
+                : slot -> filter.test(node(slot).document.metadata()));
+    }
+
+    /**
+     * Threshold and filter are applied while traversing layer 0: only live, accepted nodes above the threshold
+     * enter the result set, and exploration stops once the best remaining candidate cannot improve it.
+     *
+     * @param query normalized query vector
+     */
+    List<Document> search(float[] query, int topK, double threshold, int efSearch, IntPredicate filter) {
+        compactionLock.readLock().lock();
+        try {
+            return searchGraph(query, topK, threshold, efSearch, filter);
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of nodes in the graph, tombstones included.
+     */
+    int size() {
+        return size;
+    }
+
+    private List<Document> searchGraph(float[] query, int topK, double threshold, int efSearch, IntPredicate filter) {
+        var entry = entryPoint;
+        if (entry == null || topK <= 0) {
+            return List.of();
+        }
+        var current = entry.slot();
+        var currentScore = score(current, query);
+        for (int layer = entry.level(); layer > 0; layer--) {
+            var changed = true;
+            while (changed) {
+                changed = false;
+                for (var neighbor : node(current).neighbors.get(layer)) {
+                    var neighborScore = score(neighbor, query);
+                    if (neighborScore > currentScore) {
+                        current = neighbor;
+                        currentScore = neighborScore;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        IntPredicate accept = slot -> !node(slot).deleted && (filter == null || filter.test(slot));
+        var ef = Math.max(efSearch, topK);
+        var slots = new int[ef];
+        var scores = new float[ef];
+        var hits = Math.min(topK, searchLayer(query, current, currentScore, ef, 0, accept, threshold, slots, scores));
+        var documents = new ArrayList<Document>(hits);
+        for (int hit = 0; hit < hits; hit++) {
+            documents.add(node(slots[hit]).document.toDocument(scores[hit]));
+        }
+        return documents;
+    }
+
+    void insert(StoredDocument document, float[] embedding) {
+        compactionLock.readLock().lock();
+        try {
+            insertNode(document, VectorIndex.normalize(embedding));
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+    }
+
+    private void insertNode(StoredDocument document, float[] vector) {
+        var level = (int) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * levelMultiplier);
+        int slot;
+        Node node;
+        synchronized (structureLock) {
+            if (dimensions == 0) {
+                dimensions = vector.length;
+            } else if (dimensions != vector.length) {
+                throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+            }
+            node = new Node(document, allocate(vector), level);
+            slot = size;
+            if (slot == nodes.length) {
+                nodes = Arrays.copyOf(nodes, slot * 2);
+            }
+            nodes[slot] = node;
+            size = slot + 1;
+        }
+        var previous = slotsById.put(document.id(), slot);
+        if (previous != null) {
+            markDeleted(previous);
+        }
+        link(slot, node, vector);
+    }
+
+    /**
+     * Appends the nodes inserted since the last save to the snapshot, or writes the whole snapshot after a rebuild,
+     * rewrites the documents of the snapshot if nodes were deleted since the last save, and rewrites the graph.
+     */
+    public void save() {
+        compactionLock.readLock().lock();
+        try {
+            synchronized (saveLock) {
+                // cleared before the flags are read, a delete racing with the save is written by the next one
+                var deletes = deletedSinceSave;
+                deletedSinceSave = false;
+                var count = size;
+                var entry = entryPoint;
+                try {
+                    if (committed == 0 || !exists()) {
+                        generation++;
+                        Snapshots.writeVectors(vectorsFile, dimensions, generation, channel -> writeVectors(channel, 0, count));
+                        Snapshots.writeDocuments(documentsFile, documents(0, count), deleted(0, count), generation);
+                    } else {
+                        if (count > committed) {
+                            var from = committed;
+                            Snapshots.append(vectorsFile, documentsFile, dimensions, from, documents(from, count), deleted(from, count),
+                                    generation + 1, channel -> writeVectors(channel, from, count));
+                            generation++;
+                        }
+                        if (deletes) {
+                            Snapshots.rewriteDocuments(documentsFile, documents(0, count), deleted(0, count), generation + 1);
+                            generation++;
+                        }
+                    }
+                    committed = count;
+                    writeGraph(count, entry);
+                } catch (IOException exception) {
+                    deletedSinceSave |= deletes;
+                    throw new UncheckedIOException(exception);
+                }
+            }
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+    }
+
+    private List<StoredDocument> documents(int from, int to) {
+        var documents = new ArrayList<StoredDocument>(to - from);
+        for (int slot = from; slot < to; slot++) {
+            documents.add(node(slot).document);
+        }
+        return documents;
+    }
+
+    private BitSet deleted(int from, int to) {
+        var deleted = new BitSet(to - from);
+        for (int slot = from; slot < to; slot++) {
+            if (node(slot).deleted) {
+                deleted.set(slot - from);
+            }
+        }
+        return deleted;
+    }
+
+    private void writeVectors(FileChannel channel, int from, int to) throws IOException {
+        for (int slot = from; slot < to; slot++) {
+            Snapshots.writeSegment(channel, node(slot).vector);
+        }
+    }
+
+    private void writeGraph(int count, EntryPoint entry) throws IOException {
+        var temp = Snapshots.prepare(graphFile);
+        try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            output.writeInt(GRAPH_MAGIC);
+            output.writeInt(GRAPH_VERSION);
+            output.writeLong(generation);
+            output.writeInt(count);
+            output.writeInt(entry == null || entry.slot() >= count ? -1 : entry.slot());
+            output.writeInt(entry == null ? 0 : entry.level());
+            for (int slot = 0; slot < count; slot++) {
+                var node = node(slot);
+                output.writeBoolean(node.deleted);
+                output.writeInt(node.level());
+                for (int layer = 0; layer <= node.level(); layer++) {
+                    // neighbors inserted after the snapshot was taken are not part of it
+                    var neighbors = Arrays.stream(node.neighbors.get(layer)).filter(neighbor -> neighbor < count).toArray();
+                    output.writeInt(neighbors.length);
+                    for (var neighbor : neighbors) {
+                        output.writeInt(neighbor);
+                    }
+                }
+            }
+        }
+        Snapshots.commit(temp, graphFile);
+    }
+
+    private void markDeleted(int slot) {
+        node(slot).deleted = true;
+        deleted.incrementAndGet();
+        deletedSinceSave = true;
+    }
+
+    // tombstones still cost a visit and a dot product on every search that routes through them
+    private void compactIfNeeded() {
+        if (deleted.get() <= size * parameters.maxDeletedRatio()) {
+            return;
+        }
+        compactionLock.writeLock().lock();
+        try {
+            var count = size;
+            if (deleted.get() <= count * parameters.maxDeletedRatio()) {
+                return;
+            }
+            var live = new ArrayList<Node>(count - deleted.get());
+            for (int slot = 0; slot < count; slot++) {
+                if (!node(slot).deleted) {
+                    live.add(node(slot));
+                }
+            }
+            System.out.println("Compacting HNSW graph: " + (count - live.size()) + " of " + count + " nodes deleted");
+            synchronized (structureLock) {
+                nodes = new Node[Math.max(16, live.size())];
+                size = 0;
+                entryPoint = null;
+                chunk = null;
+            }
+            slotsById.clear();
+            deleted.set(0);
+            for (var node : live) {
+                insertNode(node.document, vector(node));
+            }
+            synchronized (saveLock) {
+                committed = 0;
+            }
+        } finally {
+            compactionLock.writeLock().unlock();
+        }
+    }
+
+    // the graph is written after the vectors, a crash in between leaves a graph of the previous commit
+    private boolean graphMatches(Snapshots.Vectors vectors) throws IOException {
+        if (!Files.exists(graphFile)) {
+            return false;
+        }
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(graphFile)))) {
+            return input.readInt() == GRAPH_MAGIC && input.readInt() == GRAPH_VERSION
+                    && input.readLong() == vectors.generation() && input.readInt() == vectors.count();
+        } catch (EOFException exception) {
+            return false;
+        }
+    }
+
+    private void link(int slot, Node node, float[] vector) {
+        var entry = entryPoint;
+        if (entry == null) {
+            synchronized (structureLock) {
+                if (entryPoint == null) {
+                    entryPoint = new EntryPoint(slot, node.level());
+                    return;
+                }
+                entry = entryPoint;
+            }
+        }
+        var current = entry.slot();
+        var currentScore = score(current, vector);
+        for (int layer = entry.level(); layer > node.level(); layer--) {
+            var changed = true;
+            while (changed) {
+                changed = false;
+                for (var neighbor : node(current).neighbors.get(layer)) {
+                    var neighborScore = score(neighbor, vector);
+                    if (neighborScore > currentScore) {
+                        current = neighbor;
+                        currentScore = neighborScore;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        var slots = new int[parameters.efConstruction()];
+        var scores = new float[parameters.efConstruction()];
+        for (int layer = Math.min(node.level(), entry.level()); layer >= 0; layer--) {
+            var found = searchLayer(vector, current, currentScore, slots.length, layer, null, Double.NEGATIVE_INFINITY, slots, scores);
+            var selected = selectNeighbors(slots, scores, found, maxNeighbors(layer), slot);
+            synchronized (node) {
+                // concurrent inserts that already reached this node through an upper layer may have linked back to it
+                var linked = node.neighbors.get(layer);
+                node.neighbors.set(layer, linked.length == 0 ? selected
+                        : shrink(node, slot, layer, IntStream.concat(IntStream.of(selected), IntStream.of(linked)).distinct().toArray()));
+            }
+            for (var neighbor : selected) {
+                connect(neighbor, slot, layer);
+            }
+            current = slots[0];
+            currentScore = scores[0];
+        }
+        if (node.level() > entry.level()) {
+            synchronized (structureLock) {
+                if (node.level() > entryPoint.level()) {
+                    entryPoint = new EntryPoint(slot, node.level());
+                }
+            }
+        }
+    }
+
+    private void connect(int slot, int newNeighbor, int layer) {
+        var node = node(slot);
+        synchronized (node) {
+            var neighbors = node.neighbors.get(layer);
+            var candidates = Arrays.copyOf(neighbors, neighbors.length + 1);
+            candidates[neighbors.length] = newNeighbor;
+            node.neighbors.set(layer, shrink(node, slot, layer, candidates));
+        }
+    }
+
+    // called under the monitor of the node, selects the neighbors again only if the candidates do not fit
+    private int[] shrink(Node node, int slot, int layer, int[] candidates) {
+        var maxNeighbors = maxNeighbors(layer);
+        if (candidates.length <= maxNeighbors) {
+            return candidates;
+        }
+        var vector = vector(node);
+        var topK = new TopK(candidates.length);
+        for (var candidate : candidates) {
+            topK.offer(candidate, score(candidate, vector));
+        }
+        var slots = new int[candidates.length];
+        var scores = new float[candidates.length];
+        var count = topK.drain(slots, scores);
+        return selectNeighbors(slots, scores, count, maxNeighbors, slot);
+    }
+
+    /**
+     * Neighbor selection heuristic from the HNSW paper: a candidate is kept only if it is closer to the base element
+     * than to any already selected neighbor, which keeps long-range links. Remaining slots are filled with the
+     * closest pruned candidates.
+     *
+     * @param slots candidates ordered from the closest
+     * @param base   slot of the element the neighbors are selected for, never selected itself
+     */
+    private int[] selectNeighbors(int[] slots, float[] scores, int count, int maxNeighbors, int base) {
+        var selected = new int[maxNeighbors];
+        var selectedCount = 0;
+        var pruned = new boolean[count];
+        for (int candidate = 0; candidate < count && selectedCount < maxNeighbors; candidate++) {
+            if (slots[candidate] == base) {
+                continue;
+            }
+            var vector = vector(node(slots[candidate]));
+            var keep = true;
+            for (int index = 0; index < selectedCount && keep; index++) {
+                keep = score(selected[index], vector) <= scores[candidate];
+            }
+            if (keep) {
+                selected[selectedCount++] = slots[candidate];
+            } else {
+                pruned[candidate] = true;
+            }
+        }
+        for (int candidate = 0; candidate < count && selectedCount < maxNeighbors; candidate++) {
+            if (pruned[candidate]) {
+                selected[selectedCount++] = slots[candidate];
+            }
+        }
+        return Arrays.copyOf(selected, selectedCount);
+    }
+
+    private int searchLayer(float[] query, int entry, float entryScore, int ef, int layer, IntPredicate accept,
+                            double threshold, int[] slots, float[] scores) {
+        var visited = new BitSet(size);
+        var candidates = new CandidateQueue(ef * 2);
+        var results = new TopK(ef);
+        visited.set(entry);
+        candidates.push(entry, entryScore);
+        if ((accept == null || accept.test(entry)) && entryScore >= threshold) {
+            results.offer(entry, entryScore);
+        }
+        while (!candidates.isEmpty()) {
+            var lowerBound = results.isFull() ? results.minScore() : results.size() > 0 ? threshold : Double.NEGATIVE_INFINITY;
+            if (candidates.peekScore() < lowerBound) {
+                break;
+            }
+            var slot = candidates.pop();
+            for (var neighbor : node(slot).neighbors.get(layer)) {
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                var neighborScore = score(neighbor, query);
+                if (!results.isFull() || neighborScore > results.minScore()) {
+                    candidates.push(neighbor, neighborScore);
+                    if ((accept == null || accept.test(neighbor)) && neighborScore >= threshold) {
+                        results.offer(neighbor, neighborScore);
+                    }
+                }
+            }
+        }
+        return results.drain(slots, scores);
+    }
+
+    private MemorySegment allocate(float[] vector) {
+        var vectorSize = (long) dimensions * Float.BYTES;
+        if (chunk == null || chunkUsed == CHUNK_SIZE) {
+            chunk = Arena.ofAuto().allocate(CHUNK_SIZE * vectorSize, Float.BYTES);
+            chunkUsed = 0;
+        }
+        var segment = chunk.asSlice(chunkUsed++ * vectorSize, vectorSize);
+        MemorySegment.copy(vector, 0, segment, FLOAT, 0, vector.length);
+        return segment;
+    }
+
+    private int maxNeighbors(int layer) {
+        return layer == 0 ? parameters.m() * 2 : parameters.m();
+    }
+
+    private Node node(int slot) {
+        return nodes[slot];
+    }
+
+    private float score(int slot, float[] query) {
+        return DOT_PRODUCT.dot(node(slot).vector, 0, query);
+    }
+
+    private float[] vector(Node node) {
+        var vector = new float[dimensions];
+        MemorySegment.copy(node.vector, FLOAT, 0, vector, 0, dimensions);
+        return vector;
+    }
+
+    private record EntryPoint(int slot, int level) {
+    }
+
+    private static final class Node {
+
+        final StoredDocument document;
+        final MemorySegment vector;
+        final AtomicReferenceArray<int[]> neighbors;
+        volatile boolean deleted;
+
+        Node(StoredDocument document, MemorySegment vector, int level) {
+            this.document = document;
+            this.vector = vector;
+            this.neighbors = new AtomicReferenceArray<>(level + 1);
+            for (int layer = 0; layer <= level; layer++) {
+                neighbors.set(layer, new int[0]);
+            }
+        }
+
+        int level() {
+            return neighbors.length() - 1;
+        }
+
+    }
+
+    /**
+     * Unbounded max-heap of (slot, score) pairs kept in primitive arrays.
+     */
+    private static final class CandidateQueue {
+
+        private int[] slots;
+        private float[] scores;
+        private int size;
+
+        CandidateQueue(int capacity) {
+            slots = new int[Math.max(capacity, 16)];
+            scores = new float[slots.length];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        float peekScore() {
+            return scores[0];
+        }
+
+        void push(int slot, float score) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            var index = size++;
+            while (index > 0) {
+                var parent = (index - 1) >>> 1;
+                if (scores[parent] >= score) {
+                    break;
+                }
+                slots[index] = slots[parent];
+                scores[index] = scores[parent];
+                index = parent;
+            }
+            slots[index] = slot;
+            scores[index] = score;
+        }
+
+        int pop() {
+            var top = slots[0];
+            var slot = slots[--size];
+            var score = scores[size];
+            var index = 0;
+            while (true) {
+                var child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && scores[child + 1] > scores[child]) {
+                    child++;
+                }
+                if (scores[child] <= score) {
+                    break;
+                }
+                slots[index] = slots[child];
+                scores[index] = scores[child];
+                index = child;
+            }
+            slots[index] = slot;
+            scores[index] = score;
+            return top;
+        }
+
+    }
+
+}
@@ -0,0 +1,10 @@
+package pl.training.ai.rag;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of {@link HybridVectorStore}, bound from {@code hybrid-search}.
+ */
+@ConfigurationProperties("hybrid-search")
+public record HybridSearchProperties(int candidates, int rankConstant, int topK) {
+}
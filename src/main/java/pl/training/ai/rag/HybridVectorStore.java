@@ -0,0 +1,131 @@
+package pl.training.ai.rag;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.pgvector.PgVectorFilterExpressionConverter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Combines full-text and vector search over the {@code vector_store} table. Both candidate lists are produced by one
+ * SQL statement (a GIN-indexed {@code tsvector} match and an HNSW-indexed cosine ordering) and fused with
+ * reciprocal-rank fusion, so exact API names found lexically compete with semantically close chunks. A chunk matches
+ * lexically if it contains any of the query terms, {@code ts_rank_cd} ranks the ones with more terms higher; a question
+ * rarely has all its words in one chunk, so requiring all of them would leave the lexical list mostly empty. The semantic
+ * list is a plain {@code order by distance limit} query, the only shape the HNSW index serves; ranks and the
+ * similarity threshold are applied to its result. Writes go through the wrapped pgvector store; {@code content_tsv}
+ * is a generated column and needs no extra work.
+ */
+public class HybridVectorStore implements VectorStore, DocumentRetriever {
+
+    private static final String HYBRID_SEARCH = """
+            with semantic as (
+                select id, row_number() over (order by distance) as rank
+                from (
+                    select id, embedding <=> ? as distance
+                    from vector_store
+                    where %1$s
+                    order by distance
+                    limit ?
+                ) nearest
+                where distance <= ?
+            ), lexical as (
+                select id, row_number() over (order by ts_rank_cd(content_tsv, query) desc) as rank
+                from vector_store, cast(replace(plainto_tsquery('english', ?)::text, ' & ', ' | ') as tsquery) query
+                where content_tsv @@ query and %1$s
+                order by ts_rank_cd(content_tsv, query) desc
+                limit ?
+            ), fused as (
+                select id, sum(1.0 / (? + rank)) as score
+                from (select * from semantic union all select * from lexical) ranked
+                group by id
+            )
+            select v.id::text, v.content, v.metadata::text, f.score
+            from fused f join vector_store v using (id)
+            order by f.score desc
+            limit ?
+            """;
+
+    private final VectorStore delegate;
+    private final JdbcTemplate jdbcTemplate;
+    private final EmbeddingModel embeddingModel;
+    private final int candidates;
+    private final int rankConstant;
+    private final int topK;
+    private final PgVectorFilterExpressionConverter filterExpressionConverter = new PgVectorFilterExpressionConverter();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * @param candidates   number of results taken from each of the lexical and the semantic list before fusion
+     * @param rankConstant the {@code k} of reciprocal-rank fusion, damping the weight of top-ranked results
+     * @param topK         number of documents returned by {@link #retrieve(Query)}
+     */
+    public HybridVectorStore(VectorStore delegate, JdbcTemplate jdbcTemplate, EmbeddingModel embeddingModel,
+                             int candidates, int rankConstant, int topK) {
+        this.delegate = delegate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.embeddingModel = embeddingModel;
+        this.candidates = candidates;
+        this.rankConstant = rankConstant;
+        this.topK = topK;
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        var embedding = new PGvector(embeddingModel.embed(request.getQuery()));
+        var filter = request.hasFilterExpression()
+                ? "metadata::jsonb @@ '" + filterExpressionConverter.convertExpression(request.getFilterExpression()) + "'::jsonpath"
+                : "true";
+        var limit = Math.max(candidates, request.getTopK());
+        return jdbcTemplate.query(HYBRID_SEARCH.formatted(filter), (resultSet, row) -> Document.builder()
+                        .id(resultSet.getString(1))
+                        .text(resultSet.getString(2))
+                        .metadata(fromJson(resultSet.getString(3)))
+                        .score(resultSet.getDouble(4))
+                        .build(),
+                embedding, limit, 1 - request.getSimilarityThreshold(),
+                request.getQuery(), limit,
+                rankConstant, request.getTopK());
+    }
+
+    @Override
+    public List<Document> retrieve(Query query) {
+        return similaritySearch(SearchRequest.builder().query(query.text()).topK(topK).build());
+    }
+
+    private Map<String, Object> fromJson(String json) {
+        try {
+            return json == null ? new HashMap<>() : objectMapper.readValue(json, new TypeReference<>() {});
+        } catch (JsonProcessingException exception) {
+            throw new IllegalArgumentException(exception);
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package pl.training.ai.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import pl.training.ai.Hashes;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Re-indexes a source by content hash. Each chunk gets an id derived from its source and the hash of its text, so
+ * only new or changed chunks are embedded, chunks that disappeared from the source are deleted and unchanged
+ * vectors are left untouched.
+ */
+public class IncrementalIndexer {
+
+    public static final String SOURCE = "filename";
+    public static final String CONTENT_HASH = "content_hash";
+
+    private final VectorStore vectorStore;
+    private final IndexedChunks indexedChunks;
+
+    public IncrementalIndexer(VectorStore vectorStore, IndexedChunks indexedChunks) {
+        this.vectorStore = vectorStore;
+        this.indexedChunks = indexedChunks;
+    }
+
+    public Result reindex(String source, List<Document> chunks) {
+        var current = new LinkedHashMap<String, Document>();
+        for (var chunk : chunks) {
+            var identified = identify(source, chunk);
+            current.putIfAbsent(identified.getId(), identified);
+        }
+        var existing = indexedChunks.ids(source);
+        var added = current.values().stream()
+                .filter(chunk -> !existing.contains(chunk.getId()))
+                .toList();
+        var removed = existing.stream()
+                .filter(id -> !current.containsKey(id))
+                .toList();
+        // a failed add leaves the previous chunks searchable, a rerun finds the same difference
+        if (!added.isEmpty()) {
+            vectorStore.add(added);
+        }
+        if (!removed.isEmpty()) {
+            vectorStore.delete(removed);
+        }
+        return new Result(added.size(), removed.size(), current.size() - added.size());
+    }
+
+    public static Document identify(String source, Document chunk) {
+        var text = Objects.requireNonNullElse(chunk.getText(), "");
+        var contentHash = Hashes.sha256(text);
+        var id = UUID.nameUUIDFromBytes((source + ':' + contentHash).getBytes(StandardCharsets.UTF_8)).toString();
+        var metadata = new HashMap<>(chunk.getMetadata());
+        metadata.put(SOURCE, source);
+        metadata.put(CONTENT_HASH, contentHash);
+        return Document.builder()
+                .id(id)
+                .text(text)
+                .metadata(metadata)
+                .build();
+    }
+
+    public record Result(int added, int removed, int unchanged) {
+    }
+
+}
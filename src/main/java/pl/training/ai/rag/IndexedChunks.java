@@ -0,0 +1,13 @@
+package pl.training.ai.rag;
+
+import java.util.Set;
+
+/**
+ * Looks up ids of the chunks currently stored for a source, identified by the {@code filename} metadata entry.
+ */
+@FunctionalInterface
+public interface IndexedChunks {
+
+    Set<String> ids(String source);
+
+}
@@ -0,0 +1,10 @@
+package pl.training.ai.rag;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings of {@link PdfIngestionPipeline}, bound from {@code ingestion}.
+ */
+@ConfigurationProperties("ingestion")
+public record IngestionProperties(boolean enabled, int embeddingConcurrency, int batchSize) {
+}
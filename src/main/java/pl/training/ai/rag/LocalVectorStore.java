@@ -0,0 +1,25 @@
+package pl.training.ai.rag;
+
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * In-process vector store persisted as a binary snapshot in a local directory.
+ */
+public interface LocalVectorStore extends VectorStore {
+
+    boolean exists();
+
+    void load() throws IOException;
+
+    /**
+     * One-off conversion of a {@link org.springframework.ai.vectorstore.SimpleVectorStore} JSON file.
+     */
+    void importJson(Resource resource) throws IOException;
+
+    Set<String> findIds(String metadataKey, Object value);
+
+}
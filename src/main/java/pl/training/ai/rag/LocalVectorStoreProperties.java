@@ -0,0 +1,14 @@
+package pl.training.ai.rag;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of the {@link LocalVectorStore}, bound from {@code local-vector-store}.
+ *
+ * @param type {@code hnsw} or {@code flat}
+ */
+@ConfigurationProperties("local-vector-store")
+public record LocalVectorStoreProperties(Path directory, String type, HnswVectorStore.Parameters hnsw) {
+}
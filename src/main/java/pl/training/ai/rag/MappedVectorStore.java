@@ -0,0 +1,173 @@
+package pl.training.ai.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+/**
+ * Exact-scan vector store backed by a binary snapshot: fixed-width float32 vectors in one memory-mapped file
+ * ({@code .vec}) and ids, contents and metadata in a separate segment ({@code .docs}). Searches run directly over
+ * the mapped region. Added documents are appended to both files, deletes rewrite them.
+ */
+public class MappedVectorStore implements LocalVectorStore {
+
+    private final EmbeddingModel embeddingModel;
+    private final Path vectorsFile;
+    private final Path documentsFile;
+    private final MetadataFilters metadataFilters = new MetadataFilters();
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    public MappedVectorStore(EmbeddingModel embeddingModel, Path directory, String name) {
+        this.embeddingModel = embeddingModel;
+        this.vectorsFile = directory.resolve(name + ".vec");
+        this.documentsFile = directory.resolve(name + ".docs");
+    }
+
+    @Override
+    public boolean exists() {
+        return Files.exists(vectorsFile) && Files.exists(documentsFile);
+    }
+
+    @Override
+    public synchronized void load() throws IOException {
+        var loaded = Snapshots.read(vectorsFile, documentsFile);
+        var vectors = loaded.vectors();
+        var index = VectorIndex.wrap(vectors.region(), vectors.dimensions(), vectors.count());
+        if (loaded.deleted().isEmpty()) {
+            snapshot = new Snapshot(index, loaded.documents(), vectors.generation());
+            return;
+        }
+        // deleted flags are only written by the HNSW store, this store rewrites the files without the deleted documents
+        var documents = new ArrayList<StoredDocument>();
+        for (int slot = 0; slot < vectors.count(); slot++) {
+            if (!loaded.deleted().get(slot)) {
+                documents.add(loaded.documents().get(slot));
+            }
+        }
+        save(new Snapshot(index.retain(slot -> !loaded.deleted().get(slot)), documents, vectors.generation() + 1));
+    }
+
+    @Override
+    public synchronized void importJson(Resource resource) throws IOException {
+        var imported = Snapshots.readJson(resource);
+        write(new Snapshot(VectorIndex.empty().append(imported.embeddings()), imported.documents(), 0));
+        load();
+    }
+
+    @Override
+    public synchronized void add(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        var embeddings = embeddingModel.embed(documents.stream().map(Document::getText).toList());
+        var current = snapshot;
+        var added = documents.stream().map(StoredDocument::of).toList();
+        // only the document references are copied, the vectors are appended to the shared slab
+        var allDocuments = new ArrayList<StoredDocument>(current.size() + added.size());
+        allDocuments.addAll(current.documents());
+        allDocuments.addAll(added);
+        var newSnapshot = new Snapshot(current.index().append(embeddings), allDocuments, current.generation() + 1);
+        try {
+            if (current.size() == 0 || !exists()) {
+                write(newSnapshot);
+            } else {
+                Snapshots.append(vectorsFile, documentsFile, newSnapshot.index().dimensions(), current.size(), added,
+                        new BitSet(), newSnapshot.generation(), channel -> newSnapshot.index().writeTo(channel, current.size(), newSnapshot.size()));
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        snapshot = newSnapshot;
+    }
+
+    @Override
+    public synchronized void delete(List<String> idList) {
+        var removed = new HashSet<>(idList);
+        var current = snapshot;
+        IntPredicate retained = slot -> !removed.contains(current.documents().get(slot).id());
+        var documents = new ArrayList<StoredDocument>();
+        for (int slot = 0; slot < current.size(); slot++) {
+            if (retained.test(slot)) {
+                documents.add(current.documents().get(slot));
+            }
+        }
+        if (documents.size() != current.size()) {
+            save(new Snapshot(current.index().retain(retained), documents, current.generation() + 1));
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        var filter = metadataFilters.compile(filterExpression);
+        var ids = snapshot.documents().stream()
+                .filter(document -> filter.test(document.metadata()))
+                .map(StoredDocument::id)
+                .toList();
+        delete(ids);
+    }
+
+    @Override
+    public Set<String> findIds(String metadataKey, Object value) {
+        return snapshot.documents().stream()
+                .filter(document -> Objects.equals(document.metadata().get(metadataKey), value))
+                .map(StoredDocument::id)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        var current = snapshot;
+        var query = VectorIndex.normalize(embeddingModel.embed(request.getQuery()));
+        IntPredicate accept = null;
+        if (request.hasFilterExpression()) {
+            var filter = metadataFilters.compile(request.getFilterExpression());
+            accept = slot -> filter.test(current.documents().get(slot).metadata());
+        }
+        var hits = current.index().search(query, request.getTopK(), request.getSimilarityThreshold(), accept);
+        var documents = new ArrayList<Document>(hits.size());
+        for (int hit = 0; hit < hits.size(); hit++) {
+            documents.add(current.documents().get(hits.slot(hit)).toDocument(hits.score(hit)));
+        }
+        return documents;
+    }
+
+    private void save(Snapshot newSnapshot) {
+        try {
+            write(newSnapshot);
+            snapshot = newSnapshot;
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    private void write(Snapshot newSnapshot) throws IOException {
+        var index = newSnapshot.index();
+        Snapshots.writeVectors(vectorsFile, index.dimensions(), newSnapshot.generation(), index::writeTo);
+        Snapshots.writeDocuments(documentsFile, newSnapshot.documents(), new BitSet(), newSnapshot.generation());
+    }
+
+    /**
+     * @param generation commit the files on disk belong to, incremented by every write
+     */
+    private record Snapshot(VectorIndex index, List<StoredDocument> documents, long generation) {
+
+        static final Snapshot EMPTY = new Snapshot(VectorIndex.empty(), List.of(), 0);
+
+        int size() {
+            return documents.size();
+        }
+
+    }
+
+}
@@ -0,0 +1,30 @@
+package pl.training.ai.rag;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.converter.SimpleVectorStoreFilterExpressionConverter;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Evaluates portable filter expressions against document metadata the same way
+ * {@link org.springframework.ai.vectorstore.SimpleVectorStore} does.
+ */
+class MetadataFilters {
+
+    private final ExpressionParser expressionParser = new SpelExpressionParser();
+    private final SimpleVectorStoreFilterExpressionConverter filterExpressionConverter = new SimpleVectorStoreFilterExpressionConverter();
+
+    Predicate<Map<String, Object>> compile(Filter.Expression filterExpression) {
+        var expression = expressionParser.parseExpression(filterExpressionConverter.convertExpression(filterExpression));
+        return metadata -> {
+            var context = new StandardEvaluationContext();
+            context.setVariable("metadata", metadata);
+            return Boolean.TRUE.equals(expression.getValue(context, Boolean.class));
+        };
+    }
+
+}
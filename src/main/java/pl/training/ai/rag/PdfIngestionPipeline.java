@@ -0,0 +1,271 @@
+package pl.training.ai.rag;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.reader.ExtractedTextFormatter;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.training.ai.Hashes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Loads a PDF into the {@code vector_store} table. Pages are extracted and split in parallel on a CPU-sized pool and
+ * handed over through a bounded queue, which throttles extraction when embedding falls behind. Embedding workers
+ * send size-bounded batches, then insert the rows and the page checkpoints in one transaction, so a crashed run
+ * resumes with the first page that was not committed. Chunks carry content-hash ids (see {@link IncrementalIndexer}),
+ * so unchanged chunks of a modified PDF are not embedded again and vanished ones are deleted after a complete run.
+ */
+public class PdfIngestionPipeline {
+
+    private static final Page END = new Page(-1, List.of());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final EmbeddingModel embeddingModel;
+    private final IndexedChunks indexedChunks;
+    private final int extractionThreads;
+    private final int embeddingConcurrency;
+    private final int batchSize;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExtractedTextFormatter textFormatter = new ExtractedTextFormatter.Builder()
+            .withNumberOfBottomTextLinesToDelete(0)
+            .withNumberOfTopPagesToSkipBeforeDelete(0)
+            .build();
+
+    public PdfIngestionPipeline(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, EmbeddingModel embeddingModel,
+                                IndexedChunks indexedChunks, int extractionThreads, int embeddingConcurrency, int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.embeddingModel = embeddingModel;
+        this.indexedChunks = indexedChunks;
+        this.extractionThreads = extractionThreads;
+        this.embeddingConcurrency = embeddingConcurrency;
+        this.batchSize = batchSize;
+    }
+
+    public void ingest(Resource pdf) throws IOException {
+        var source = Objects.requireNonNullElse(pdf.getFilename(), pdf.getDescription());
+        var content = pdf.getContentAsByteArray();
+        var fingerprint = Hashes.sha256(content);
+        int pageCount;
+        try (var document = Loader.loadPDF(content)) {
+            pageCount = document.getNumberOfPages();
+        }
+        var committed = new HashSet<>(jdbcTemplate.queryForList(
+                "select page from ingestion_checkpoint where source = ? and fingerprint = ?", Integer.class, source, fingerprint));
+        var pages = new ArrayList<Integer>();
+        for (int page = 1; page <= pageCount; page++) {
+            if (!committed.contains(page)) {
+                pages.add(page);
+            }
+        }
+        System.out.printf("Ingesting %s: %d of %d pages left%n", source, pages.size(), pageCount);
+        if (!pages.isEmpty()) {
+            process(content, source, fingerprint, pages, Set.copyOf(indexedChunks.ids(source)));
+        }
+        removeVanished(source, fingerprint);
+    }
+
+    private void process(byte[] content, String source, String fingerprint, List<Integer> pages, Set<String> existing) {
+        var queue = new ArrayBlockingQueue<Page>(embeddingConcurrency * 4);
+        var extractors = Executors.newFixedThreadPool(extractionThreads);
+        var embedders = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            var extraction = new ArrayList<Future<?>>();
+            var rangeSize = (pages.size() + extractionThreads - 1) / extractionThreads;
+            for (int start = 0; start < pages.size(); start += rangeSize) {
+                var range = pages.subList(start, Math.min(start + rangeSize, pages.size()));
+                extraction.add(extractors.submit(() -> extract(content, source, range, queue)));
+            }
+            var embedding = new ArrayList<Future<?>>();
+            for (int worker = 0; worker < embeddingConcurrency; worker++) {
+                embedding.add(embedders.submit(() -> {
+                    try {
+                        return embedAndStore(source, fingerprint, existing, queue);
+                    } catch (RuntimeException exception) {
+                        extractors.shutdownNow(); // cancels extraction, unblocks extractors waiting on the full queue
+                        throw exception;
+                    }
+                }));
+            }
+            try {
+                await(extraction);
+                for (int worker = 0; worker < embeddingConcurrency; worker++) {
+                    // nobody takes the end markers once all workers have failed
+                    while (!queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                        rethrowFailure(embedding);
+                    }
+                }
+                await(embedding);
+            } catch (RuntimeException exception) {
+                // extraction cancelled by a failed worker reports the failure of the worker
+                rethrowFailure(embedding);
+                throw exception;
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ingestion interrupted", exception);
+        } finally {
+            extractors.shutdownNow();
+            embedders.shutdownNow();
+        }
+    }
+
+    private Void extract(byte[] content, String source, List<Integer> pages, BlockingQueue<Page> queue) throws IOException, InterruptedException {
+        var textSplitter = new TokenTextSplitter();
+        try (var document = Loader.loadPDF(content)) {
+            var textStripper = new PDFTextStripper();
+            for (var page : pages) {
+                textStripper.setStartPage(page);
+                textStripper.setEndPage(page);
+                var text = textFormatter.format(textStripper.getText(document), page);
+                var chunks = text.isBlank() ? List.<Document>of() : textSplitter.split(Document.builder()
+                        .text(text)
+                        .metadata(Map.of("page_number", page))
+                        .build())
+                        .stream()
+                        .map(chunk -> IncrementalIndexer.identify(source, chunk))
+                        .toList();
+                queue.put(new Page(page, chunks));
+            }
+        }
+        return null;
+    }
+
+    private Void embedAndStore(String source, String fingerprint, Set<String> existing, BlockingQueue<Page> queue) throws InterruptedException {
+        var finished = false;
+        while (!finished) {
+            var batch = new ArrayList<Page>();
+            var chunks = 0;
+            var page = queue.take();
+            while (page != END) {
+                batch.add(page);
+                chunks += page.chunks().size();
+                if (chunks >= batchSize || (page = queue.poll()) == null) {
+                    break;
+                }
+            }
+            finished = page == END;
+            if (!batch.isEmpty()) {
+                store(source, fingerprint, existing, batch);
+            }
+        }
+        return null;
+    }
+
+    private void store(String source, String fingerprint, Set<String> existing, List<Page> pages) {
+        var documents = pages.stream()
+                .flatMap(page -> page.chunks().stream())
+                .filter(chunk -> !existing.contains(chunk.getId()))
+                .toList();
+        var embeddings = documents.isEmpty() ? List.<float[]>of()
+                : embeddingModel.embed(documents.stream().map(Document::getText).toList());
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate("insert into vector_store (id, content, metadata, embedding) values (?, ?, ?::json, ?) on conflict (id) do nothing",
+                    new BatchPreparedStatementSetter() {
+
+                        @Override
+                        public void setValues(PreparedStatement statement, int index) throws SQLException {
+                            var document = documents.get(index);
+                            statement.setObject(1, UUID.fromString(document.getId()));
+                            statement.setString(2, document.getText());
+                            statement.setString(3, toJson(document.getMetadata()));
+                            statement.setObject(4, new PGvector(embeddings.get(index)));
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return documents.size();
+                        }
+
+                    });
+            jdbcTemplate.batchUpdate("insert into ingestion_checkpoint (source, fingerprint, page, chunk_ids) values (?, ?, ?, ?)",
+                    new BatchPreparedStatementSetter() {
+
+                        @Override
+                        public void setValues(PreparedStatement statement, int index) throws SQLException {
+                            var page = pages.get(index);
+                            var chunkIds = page.chunks().stream().map(Document::getId).toArray();
+                            statement.setString(1, source);
+                            statement.setString(2, fingerprint);
+                            statement.setInt(3, page.number());
+                            statement.setArray(4, statement.getConnection().createArrayOf("text", chunkIds));
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return pages.size();
+                        }
+
+                    });
+        });
+    }
+
+    private void removeVanished(String source, String fingerprint) {
+        var current = new HashSet<>(jdbcTemplate.queryForList(
+                "select unnest(chunk_ids) from ingestion_checkpoint where source = ? and fingerprint = ?", String.class, source, fingerprint));
+        var vanished = indexedChunks.ids(source).stream()
+                .filter(id -> !current.contains(id))
+                .map(id -> new Object[]{UUID.fromString(id)})
+                .toList();
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate("delete from vector_store where id = ?", vanished);
+            jdbcTemplate.update("delete from ingestion_checkpoint where source = ? and fingerprint <> ?", source, fingerprint);
+        });
+        if (!vanished.isEmpty()) {
+            System.out.printf("Removed %d vanished chunks of %s%n", vanished.size(), source);
+        }
+    }
+
+    private String toJson(Map<String, Object> metadata) {
+        try {
+            return objectMapper.writeValueAsString(metadata);
+        } catch (JsonProcessingException exception) {
+            throw new IllegalArgumentException(exception);
+        }
+    }
+
+    private static void await(List<Future<?>> futures) throws InterruptedException {
+        for (var future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException exception) {
+                throw failure(exception.getCause());
+            }
+        }
+    }
+
+    private static void rethrowFailure(List<Future<?>> futures) {
+        for (var future : futures) {
+            if (future.state() == Future.State.FAILED) {
+                throw failure(future.exceptionNow());
+            }
+        }
+    }
+
+    private static RuntimeException failure(Throwable cause) {
+        if (cause instanceof IOException ioException) {
+            return new UncheckedIOException(ioException);
+        }
+        return new IllegalStateException("Ingestion failed", cause);
+    }
+
+
+    private record Page(int number, List<Document> chunks) {
+    }
+
+}
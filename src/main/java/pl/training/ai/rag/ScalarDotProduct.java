@@ -0,0 +1,16 @@
+package pl.training.ai.rag;
+
+import java.lang.foreign.MemorySegment;
+
+final class ScalarDotProduct implements DotProduct {
+
+    @Override
+    public float dot(MemorySegment segment, long offset, float[] query) {
+        var sum = 0f;
+        for (int index = 0; index < query.length; index++) {
+            sum += segment.get(FLOAT, offset + (long) index * Float.BYTES) * query[index];
+        }
+        return sum;
+    }
+
+}
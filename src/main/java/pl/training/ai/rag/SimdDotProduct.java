@@ -0,0 +1,30 @@
+package pl.training.ai.rag;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+
+final class SimdDotProduct implements DotProduct {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public float dot(MemorySegment segment, long offset, float[] query) {
+        var sum = FloatVector.zero(SPECIES);
+        var bound = SPECIES.loopBound(query.length);
+        int index = 0;
+        for (; index < bound; index += SPECIES.length()) {
+            var vector = FloatVector.fromMemorySegment(SPECIES, segment, offset + (long) index * Float.BYTES, ByteOrder.LITTLE_ENDIAN);
+            sum = vector.fma(FloatVector.fromArray(SPECIES, query, index), sum);
+        }
+        var result = sum.reduceLanes(VectorOperators.ADD);
+        for (; index < query.length; index++) {
+            result += segment.get(FLOAT, offset + (long) index * Float.BYTES) * query[index];
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,326 @@
+package pl.training.ai.rag;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.Resource;
+
+import java.io.*;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import static pl.training.ai.rag.DotProduct.FLOAT;
+
+/**
+ * Binary snapshot format shared by the local vector stores: a {@code .vec} file with a 32 byte header followed by
+ * fixed-width little-endian normalized float32 vectors, and a {@code .docs} file with a 40 byte header followed by
+ * a deleted flag and length-prefixed id, content and metadata per document. The documents header is the single commit point: it carries the
+ * generation and the count of the last commit and the generation of the vectors file it belongs to, and readers
+ * ignore the vectors past the count. Appends write the records of both files past the committed ones and the
+ * documents header last, so a failed append leaves the previous commit. A pair of files from different rewrites (e.g.
+ * after a crash between the two renames) is rejected on load.
+ */
+final class Snapshots {
+
+    private static final int MAGIC = 0x56454331; // VEC1
+    private static final int DOCUMENTS_MAGIC = 0x444F4331; // DOC1
+    private static final int VERSION = 4;
+    private static final int HEADER_SIZE = 32;
+    private static final int DOCUMENTS_HEADER_SIZE = 40;
+    private static final long WRITE_CHUNK_SIZE = 64L << 20;
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {};
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * @param generation commit the documents header belongs to
+     */
+    record Vectors(MemorySegment region, int dimensions, int count, long generation) {
+
+        float[] vector(int slot) {
+            var vector = new float[dimensions];
+            MemorySegment.copy(region, FLOAT, (long) slot * dimensions * Float.BYTES, vector, 0, dimensions);
+            return vector;
+        }
+
+    }
+
+    /**
+     * @param deleted slots of the documents deleted after they were written, they keep their vectors
+     */
+    record Loaded(Vectors vectors, List<StoredDocument> documents, BitSet deleted) {
+    }
+
+    record Imported(List<StoredDocument> documents, List<float[]> embeddings) {
+    }
+
+    /**
+     * @param length            bytes of the committed records
+     * @param vectorsGeneration generation of the rewrite that created the vectors file, appends keep it
+     */
+    private record DocumentsHeader(long generation, int count, long length, long vectorsGeneration) {
+    }
+
+    interface VectorWriter {
+
+        void writeTo(FileChannel channel) throws IOException;
+
+    }
+
+    private Snapshots() {
+    }
+
+    /**
+     * Reads the last commit, the vectors past its count are leftovers of a failed append.
+     */
+    static Loaded read(Path vectorsFile, Path documentsFile) throws IOException {
+        MemorySegment segment;
+        try (var channel = FileChannel.open(vectorsFile, StandardOpenOption.READ)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), Arena.ofAuto());
+        }
+        if (segment.byteSize() < HEADER_SIZE || segment.get(INT, 0) != MAGIC || segment.get(INT, 4) != VERSION) {
+            throw new IOException("Unsupported vector store snapshot: " + vectorsFile);
+        }
+        var dimensions = segment.get(INT, 8);
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(documentsFile)))) {
+            var header = documentsHeader(ByteBuffer.wrap(input.readNBytes(DOCUMENTS_HEADER_SIZE)), documentsFile);
+            if (header.vectorsGeneration() != segment.get(LONG, 16)) {
+                throw new IOException("Documents snapshot %s does not match the vectors %s (generation %d, expected %d)"
+                        .formatted(documentsFile, vectorsFile, segment.get(LONG, 16), header.vectorsGeneration()));
+            }
+            var end = HEADER_SIZE + (long) header.count() * dimensions * Float.BYTES;
+            if (segment.byteSize() < end) {
+                throw new IOException("Truncated vector store snapshot: " + vectorsFile);
+            }
+            var documents = new ArrayList<StoredDocument>(header.count());
+            var deleted = new BitSet();
+            for (int index = 0; index < header.count(); index++) {
+                if (input.readBoolean()) {
+                    deleted.set(index);
+                }
+                var id = readString(input);
+                var content = readString(input);
+                var metadata = OBJECT_MAPPER.readValue(readString(input), METADATA_TYPE);
+                documents.add(new StoredDocument(id, content, metadata));
+            }
+            var vectors = new Vectors(segment.asSlice(HEADER_SIZE, end - HEADER_SIZE), dimensions, header.count(), header.generation());
+            return new Loaded(vectors, documents, deleted);
+        }
+    }
+
+    /**
+     * Replaces the file with new vectors, the documents of the same generation have to be written after them.
+     *
+     * @param writer writes the normalized vectors
+     */
+    static void writeVectors(Path file, int dimensions, long generation, VectorWriter writer) throws IOException {
+        var temp = prepare(file);
+        try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, vectorsHeader(dimensions, generation));
+            writer.writeTo(channel);
+            channel.force(false);
+        }
+        commit(temp, file);
+    }
+
+    /**
+     * Replaces the file with the given documents, which commits the vectors of the same generation.
+     *
+     * @param deleted indexes of the deleted documents
+     */
+    static void writeDocuments(Path file, List<StoredDocument> documents, BitSet deleted, long generation) throws IOException {
+        writeDocuments(file, documents, deleted, generation, generation);
+    }
+
+    /**
+     * Replaces the file with the committed documents and new deleted flags, keeping the vectors file.
+     *
+     * @param deleted indexes of the deleted documents
+     */
+    static void rewriteDocuments(Path file, List<StoredDocument> documents, BitSet deleted, long generation) throws IOException {
+        DocumentsHeader header;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var buffer = ByteBuffer.allocate(DOCUMENTS_HEADER_SIZE);
+            channel.read(buffer, 0);
+            header = documentsHeader(buffer.flip(), file);
+        }
+        if (header.count() != documents.size()) {
+            throw new IOException("Documents snapshot does not match the documents: " + file);
+        }
+        writeDocuments(file, documents, deleted, generation, header.vectorsGeneration());
+    }
+
+    /**
+     * Appends documents and their vectors after the {@code committed} ones. The records of both files are written
+     * first and the documents header last, so a failed append leaves the previous commit, and a retry overwrites the
+     * leftovers.
+     *
+     * @param deleted indexes of the appended documents that are already deleted
+     * @param writer  writes the normalized vectors of the appended documents
+     */
+    static void append(Path vectorsFile, Path documentsFile, int dimensions, int committed, List<StoredDocument> documents,
+                       BitSet deleted, long generation, VectorWriter writer) throws IOException {
+        try (var vectors = FileChannel.open(vectorsFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             var records = FileChannel.open(documentsFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var buffer = ByteBuffer.allocate(DOCUMENTS_HEADER_SIZE);
+            records.read(buffer, 0);
+            var header = documentsHeader(buffer.flip(), documentsFile);
+            var vectorsHeader = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.count() != committed || vectors.read(vectorsHeader, 0) < HEADER_SIZE
+                    || vectorsHeader.getLong(16) != header.vectorsGeneration()) {
+                throw new IOException("Documents snapshot does not match the vectors: " + documentsFile);
+            }
+            var length = header.length();
+            records.truncate(DOCUMENTS_HEADER_SIZE + length);
+            records.position(DOCUMENTS_HEADER_SIZE + length);
+            length += writeRecords(records, documents, deleted);
+            records.force(false);
+            var end = HEADER_SIZE + (long) committed * dimensions * Float.BYTES;
+            vectors.truncate(end);
+            vectors.position(end);
+            writer.writeTo(vectors);
+            vectors.force(false);
+            records.position(0);
+            writeFully(records, documentsHeader(new DocumentsHeader(generation, committed + documents.size(), length,
+                    header.vectorsGeneration())));
+            records.force(false);
+        }
+    }
+
+    /**
+     * Writes a region in chunks, a single {@link MemorySegment#asByteBuffer()} is limited to 2 GB.
+     */
+    static void writeSegment(FileChannel channel, MemorySegment segment) throws IOException {
+        for (long offset = 0; offset < segment.byteSize(); offset += WRITE_CHUNK_SIZE) {
+            writeFully(channel, segment.asSlice(offset, Math.min(WRITE_CHUNK_SIZE, segment.byteSize() - offset)).asByteBuffer());
+        }
+    }
+
+    /**
+     * Reads a {@link org.springframework.ai.vectorstore.SimpleVectorStore} JSON file.
+     */
+    static Imported readJson(Resource resource) throws IOException {
+        var documents = new ArrayList<StoredDocument>();
+        var embeddings = new ArrayList<float[]>();
+        try (var input = resource.getInputStream()) {
+            for (var entry : OBJECT_MAPPER.readTree(input)) {
+                var embedding = entry.get("embedding");
+                var vector = new float[embedding.size()];
+                for (int index = 0; index < vector.length; index++) {
+                    vector[index] = embedding.get(index).floatValue();
+                }
+                var metadata = OBJECT_MAPPER.convertValue(entry.get("metadata"), METADATA_TYPE);
+                documents.add(new StoredDocument(entry.get("id").asText(), entry.get("text").asText(), metadata));
+                embeddings.add(vector);
+            }
+        }
+        return new Imported(documents, embeddings);
+    }
+
+    static Path prepare(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    static void commit(Path temp, Path file) throws IOException {
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static ByteBuffer vectorsHeader(int dimensions, long generation) {
+        return ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(dimensions)
+                .putInt(0)
+                .putLong(generation)
+                .putLong(0)
+                .flip();
+    }
+
+    private static ByteBuffer documentsHeader(DocumentsHeader header) {
+        return ByteBuffer.allocate(DOCUMENTS_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(DOCUMENTS_MAGIC)
+                .putInt(VERSION)
+                .putLong(header.generation())
+                .putInt(header.count())
+                .putLong(header.length())
+                .putLong(header.vectorsGeneration())
+                .putInt(0)
+                .flip();
+    }
+
+    private static DocumentsHeader documentsHeader(ByteBuffer buffer, Path file) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < DOCUMENTS_HEADER_SIZE || buffer.getInt() != DOCUMENTS_MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Unsupported documents snapshot: " + file);
+        }
+        return new DocumentsHeader(buffer.getLong(), buffer.getInt(), buffer.getLong(), buffer.getLong());
+    }
+
+    private static void writeDocuments(Path file, List<StoredDocument> documents, BitSet deleted, long generation,
+                                       long vectorsGeneration) throws IOException {
+        var temp = prepare(file);
+        try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(DOCUMENTS_HEADER_SIZE);
+            var length = writeRecords(channel, documents, deleted);
+            channel.position(0);
+            writeFully(channel, documentsHeader(new DocumentsHeader(generation, documents.size(), length, vectorsGeneration)));
+            channel.force(false);
+        }
+        commit(temp, file);
+    }
+
+    private static long writeRecords(FileChannel channel, List<StoredDocument> documents, BitSet deleted) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var output = new DataOutputStream(bytes);
+        var length = 0L;
+        for (int index = 0; index < documents.size(); index++) {
+            var document = documents.get(index);
+            output.writeBoolean(deleted.get(index));
+            writeString(output, document.id());
+            writeString(output, document.content());
+            writeString(output, OBJECT_MAPPER.writeValueAsString(document.metadata()));
+            if (bytes.size() >= WRITE_CHUNK_SIZE) {
+                length += flush(channel, bytes);
+            }
+        }
+        return length + flush(channel, bytes);
+    }
+
+    private static long flush(FileChannel channel, ByteArrayOutputStream bytes) throws IOException {
+        var length = bytes.size();
+        writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+        bytes.reset();
+        return length;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        return new String(input.readNBytes(input.readInt()), StandardCharsets.UTF_8);
+    }
+
+}
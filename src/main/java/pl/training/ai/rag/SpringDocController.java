@@ -2,54 +2,83 @@ package pl.training.ai.rag;
 
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
-import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.openai.OpenAiChatModel;
-import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.rag.Query;
 import org.springframework.ai.vectorstore.VectorStore;
-import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import pl.training.ai.PromptTemplates;
+import pl.training.ai.chat.AdvisorParams;
 import pl.training.ai.chat.PromptRequest;
+import pl.training.ai.chat.TimeToFirstToken;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 public class SpringDocController {
 
     private final ChatClient chatClient;
     private final VectorStore vectorStore;
+    private final Scheduler jdbcScheduler;
+    private final TimeToFirstToken timeToFirstToken;
+    private final PromptTemplates promptTemplates;
 
-    @Value("classpath:prompts/spring-doc.st")
-    private Resource springDocPrompt;
-
-    public SpringDocController(OpenAiChatModel chatModel, PgVectorStore vectorStore) {
-        this.chatClient = ChatClient.builder(chatModel)
+    public SpringDocController(@Qualifier("openaiChatClient") ChatClient chatClient, HybridVectorStore vectorStore,
+                               Scheduler jdbcScheduler, TimeToFirstToken timeToFirstToken, PromptTemplates promptTemplates) {
+        this.chatClient = chatClient.mutate()
                 //.defaultAdvisors(new QuestionAnswerAdvisor(vectorStore))
                 .build();
         this.vectorStore = vectorStore;
+        this.jdbcScheduler = jdbcScheduler;
+        this.timeToFirstToken = timeToFirstToken;
+        this.promptTemplates = promptTemplates;
     }
 
     @PostMapping("spring-doc")
     public String trainings(@RequestBody PromptRequest promptRequest) {
-        var promptTemplate = new PromptTemplate(springDocPrompt);
-        var params = new HashMap<String, Object>();
-        params.put("input", promptRequest.message());
-        params.put("documents", String.join("\n", findSimilar(promptRequest.message())));
-        var prompt = promptTemplate.create(params);
-
+        var prompt = prompt(promptRequest.message(), findSimilar(promptRequest.message()));
         return chatClient
                 .prompt(prompt)
+                .advisors(advisor -> advisor.param(AdvisorParams.ENDPOINT, "spring-doc"))
                 .call()
                 .content();
     }
 
+    // The vector search is a blocking JDBC call, so it runs on the bounded jdbc scheduler before the answer is streamed
+    @PostMapping("reactive/spring-doc")
+    public Flux<String> reactiveSpringDoc(@RequestBody PromptRequest promptRequest) {
+        return Mono.fromCallable(() -> findSimilar(promptRequest.message()))
+                .subscribeOn(jdbcScheduler)
+                .flatMapMany(documents -> chatClient
+                        .prompt(prompt(promptRequest.message(), documents))
+                        .advisors(advisor -> advisor.param(AdvisorParams.ENDPOINT, "reactive/spring-doc"))
+                        .stream()
+                        .content())
+                .transform(timeToFirstToken.of("spring-doc"));
+    }
+
+    // The instructions are a separate, static system message, so they form a cacheable prompt prefix; the retrieved
+    // documents come before the question, which is the only part that always differs
+    private Prompt prompt(String question, List<String> documents) {
+        var params = new HashMap<String, Object>();
+        params.put("input", question);
+        params.put("documents", String.join("\n", documents));
+        var systemMessage = new SystemMessage(promptTemplates.renderOnce("spring-doc-system", Map.of()));
+        return new Prompt(systemMessage, new UserMessage(promptTemplates.render("spring-doc", params)));
+    }
+
     private List<String> findSimilar(String message) {
-        var documents = vectorStore.similaritySearch(SearchRequest.builder().query(message).topK(5).build());
+        var documents = vectorStore.retrieve(new Query(message));
         return documents.stream().map(Document::getFormattedContent).toList();
     }
 
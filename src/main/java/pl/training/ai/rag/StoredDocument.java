@@ -0,0 +1,24 @@
+package pl.training.ai.rag;
+
+import org.springframework.ai.document.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+record StoredDocument(String id, String content, Map<String, Object> metadata) {
+
+    static StoredDocument of(Document document) {
+        return new StoredDocument(document.getId(), Objects.requireNonNullElse(document.getText(), ""), document.getMetadata());
+    }
+
+    Document toDocument(float score) {
+        return Document.builder()
+                .id(id)
+                .text(content)
+                .metadata(new HashMap<>(metadata))
+                .score((double) score)
+                .build();
+    }
+
+}
@@ -0,0 +1,134 @@
+package pl.training.ai.rag;
+
+/**
+ * Bounded min-heap of (slot, score) pairs kept in primitive arrays. An instance can be {@link #reset(int) reset} and
+ * reused, so a search that keeps one per thread does not allocate.
+ */
+final class TopK {
+
+    private int[] slots;
+    private float[] scores;
+    private int capacity;
+    private int size;
+
+    TopK(int capacity) {
+        slots = new int[capacity];
+        scores = new float[capacity];
+        this.capacity = capacity;
+    }
+
+    /**
+     * Empties the heap and sets its capacity, growing the arrays only when they are too small.
+     */
+    void reset(int newCapacity) {
+        if (newCapacity > slots.length) {
+            slots = new int[newCapacity];
+            scores = new float[newCapacity];
+        }
+        capacity = newCapacity;
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isFull() {
+        return size == capacity;
+    }
+
+    float minScore() {
+        return scores[0];
+    }
+
+    void offer(int slot, float score) {
+        if (capacity == 0) {
+            return;
+        }
+        if (size < capacity) {
+            slots[size] = slot;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            slots[0] = slot;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Drains the heap into the given arrays ordered from the best to the worst score.
+     */
+    int drain(int[] slotsOut, float[] scoresOut) {
+        var count = size;
+        for (int index = count - 1; index >= 0; index--) {
+            slotsOut[index] = slots[0];
+            scoresOut[index] = scores[0];
+            size--;
+            slots[0] = slots[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+        return count;
+    }
+
+    /**
+     * Sorts the entries in place from the best to the worst score (a heap sort), after which they are read with
+     * {@link #slot(int)} and {@link #score(int)}. The heap has to be {@link #reset(int) reset} before the next offer.
+     *
+     * @return the number of entries
+     */
+    int sort() {
+        var count = size;
+        while (size > 1) {
+            swap(0, --size);
+            siftDown(0);
+        }
+        size = count;
+        return count;
+    }
+
+    int slot(int index) {
+        return slots[index];
+    }
+
+    float score(int index) {
+        return scores[index];
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            var parent = (index - 1) >>> 1;
+            if (scores[parent] <= scores[index]) {
+                return;
+            }
+            swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            var left = 2 * index + 1;
+            if (left >= size) {
+                return;
+            }
+            var smallest = left + 1 < size && scores[left + 1] < scores[left] ? left + 1 : left;
+            if (scores[index] <= scores[smallest]) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int first, int second) {
+        var slot = slots[first];
+        slots[first] = slots[second];
+        slots[second] = slot;
+        var score = scores[first];
+        scores[first] = scores[second];
+        scores[second] = score;
+    }
+
+}
@@ -2,22 +2,32 @@ package pl.training.ai.rag;
 
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
-import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.converter.BeanOutputConverter;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import pl.training.ai.chat.AdvisorParams;
 import pl.training.ai.chat.PromptRequest;
+import pl.training.ai.chat.SemanticCacheAdvisor;
+import pl.training.ai.chat.TimeToFirstToken;
+import reactor.core.publisher.Mono;
+
+import java.util.stream.Collectors;
 
 @RestController
 public class TrainingController {
 
     private final ChatClient chatClient;
+    private final TimeToFirstToken timeToFirstToken;
 
-    public TrainingController(OpenAiChatModel chatModel, VectorStore vectorStore) {
-        this.chatClient = ChatClient.builder(chatModel)
-                .defaultAdvisors(new QuestionAnswerAdvisor(vectorStore))
+    public TrainingController(@Qualifier("openaiChatClient") ChatClient chatClient, @Qualifier("localVectorStore") VectorStore vectorStore,
+                              SemanticCacheAdvisor semanticCacheAdvisor, TimeToFirstToken timeToFirstToken) {
+        this.chatClient = chatClient.mutate()
+                .defaultAdvisors(new QuestionAnswerAdvisor(vectorStore), semanticCacheAdvisor)
                 .build();
+        this.timeToFirstToken = timeToFirstToken;
     }
 
     @PostMapping("trainings")
@@ -25,8 +35,24 @@ public class TrainingController {
         return chatClient
                 .prompt()
                 .user(promptRequest.message())
+                .advisors(advisor -> advisor.param(AdvisorParams.ENDPOINT, "trainings"))
                 .call()
                 .entity(TrainingList.class);
     }
 
+    // Retrieval runs in QuestionAnswerAdvisor on its bounded-elastic scheduler, the answer is streamed and converted
+    // once complete
+    @PostMapping("reactive/trainings")
+    public Mono<TrainingList> reactiveTrainings(@RequestBody PromptRequest promptRequest) {
+        var outputConverter = new BeanOutputConverter<>(TrainingList.class);
+        return chatClient
+                .prompt()
+                .user(promptRequest.message() + System.lineSeparator() + outputConverter.getFormat())
+                .stream()
+                .content()
+                .transform(timeToFirstToken.of("trainings"))
+                .collect(Collectors.joining())
+                .map(outputConverter::convert);
+    }
+
 }
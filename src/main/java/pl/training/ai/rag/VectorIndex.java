@@ -0,0 +1,195 @@
+package pl.training.ai.rag;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+import static pl.training.ai.rag.DotProduct.FLOAT;
+
+/**
+ * Contiguous off-heap slab of unit-length float32 vectors. Vectors are normalized on insert, so cosine similarity
+ * reduces to a dot product. Instances are immutable, writes return a new index and leave readers untouched: the slab
+ * has spare capacity and an append writes past the end of the newest index sharing it, which older indexes never
+ * read, so appends copy the slab only when it is full.
+ */
+public final class VectorIndex {
+
+    private static final DotProduct DOT_PRODUCT = DotProduct.create();
+    private static final int MINIMUM_CAPACITY = 16;
+    private static final ThreadLocal<TopK> RESULTS = ThreadLocal.withInitial(() -> new TopK(0));
+
+    private final Slab slab;
+    private final int dimensions;
+    private final int size;
+
+    private VectorIndex(Slab slab, int dimensions, int size) {
+        this.slab = slab;
+        this.dimensions = dimensions;
+        this.size = size;
+    }
+
+    public static VectorIndex empty() {
+        return new VectorIndex(new Slab(MemorySegment.NULL, 0, false), 0, 0);
+    }
+
+    /**
+     * Uses an existing region (e.g. a mapped snapshot) that already contains normalized vectors. The region is never
+     * written, the first append copies it.
+     */
+    public static VectorIndex wrap(MemorySegment segment, int dimensions, int size) {
+        return new VectorIndex(new Slab(segment, size, false), dimensions, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public VectorIndex append(List<float[]> vectors) {
+        if (vectors.isEmpty()) {
+            return this;
+        }
+        var newDimensions = size == 0 ? vectors.getFirst().length : dimensions;
+        for (var vector : vectors) {
+            if (vector.length != newDimensions) {
+                throw new IllegalArgumentException("Expected " + newDimensions + " dimensions, got " + vector.length);
+            }
+        }
+        var newSize = size + vectors.size();
+        var target = size > 0 && slab.claim(size, newSize, dimensions) ? slab : grow(newDimensions, newSize);
+        var slot = size;
+        for (var vector : vectors) {
+            MemorySegment.copy(normalize(vector), 0, target.segment(), FLOAT, offset(slot++, newDimensions), newDimensions);
+        }
+        return new VectorIndex(target, newDimensions, newSize);
+    }
+
+    public VectorIndex retain(IntPredicate predicate) {
+        var retained = 0;
+        var newSlab = Arena.ofAuto().allocate(Math.max(byteSize(), 1), Float.BYTES);
+        for (int slot = 0; slot < size; slot++) {
+            if (predicate.test(slot)) {
+                MemorySegment.copy(slab.segment(), offset(slot, dimensions), newSlab, offset(retained++, dimensions), (long) dimensions * Float.BYTES);
+            }
+        }
+        return new VectorIndex(new Slab(newSlab, retained, true), dimensions, retained);
+    }
+
+    public float[] vector(int slot) {
+        var vector = new float[dimensions];
+        MemorySegment.copy(slab.segment(), FLOAT, offset(slot, dimensions), vector, 0, dimensions);
+        return vector;
+    }
+
+    /**
+     * @param query normalized query vector
+     */
+    public float score(int slot, float[] query) {
+        return DOT_PRODUCT.dot(slab.segment(), offset(slot, dimensions), query);
+    }
+
+    /**
+     * Exact scan for the {@code k} best slots. The result is sorted best first and belongs to the calling thread: it
+     * is reused, without allocating, by the next search on that thread.
+     *
+     * @param query normalized query vector
+     */
+    TopK search(float[] query, int k, double threshold, IntPredicate accept) {
+        var topK = RESULTS.get();
+        topK.reset(k);
+        for (int slot = 0; slot < size; slot++) {
+            if (accept != null && !accept.test(slot)) {
+                continue;
+            }
+            var score = score(slot, query);
+            if (score >= threshold && (!topK.isFull() || score > topK.minScore())) {
+                topK.offer(slot, score);
+            }
+        }
+        topK.sort();
+        return topK;
+    }
+
+    public void writeTo(FileChannel channel) throws IOException {
+        writeTo(channel, 0, size);
+    }
+
+    /**
+     * Writes the vectors of the slots from {@code fromSlot} (inclusive) to {@code toSlot} (exclusive).
+     */
+    public void writeTo(FileChannel channel, int fromSlot, int toSlot) throws IOException {
+        if (fromSlot < toSlot) {
+            Snapshots.writeSegment(channel, slab.segment().asSlice(offset(fromSlot, dimensions), offset(toSlot - fromSlot, dimensions)));
+        }
+    }
+
+    public static float[] normalize(float[] vector) {
+        var sum = 0.0;
+        for (var value : vector) {
+            sum += value * value;
+        }
+        var normalized = new float[vector.length];
+        if (sum == 0) {
+            return normalized;
+        }
+        var scale = (float) (1 / Math.sqrt(sum));
+        for (int index = 0; index < vector.length; index++) {
+            normalized[index] = vector[index] * scale;
+        }
+        return normalized;
+    }
+
+    private long byteSize() {
+        return (long) size * dimensions * Float.BYTES;
+    }
+
+    private Slab grow(int newDimensions, int newSize) {
+        var capacity = Math.max(MINIMUM_CAPACITY, Math.max(newSize, size * 2));
+        var segment = Arena.ofAuto().allocate((long) capacity * newDimensions * Float.BYTES, Float.BYTES);
+        if (size > 0) {
+            MemorySegment.copy(slab.segment(), 0, segment, 0, byteSize());
+        }
+        return new Slab(segment, newSize, true);
+    }
+
+    private static long offset(int slot, int dimensions) {
+        return (long) slot * dimensions * Float.BYTES;
+    }
+
+    /**
+     * Vector storage shared by the indexes derived from each other by appends.
+     */
+    private static final class Slab {
+
+        private final MemorySegment segment;
+        private final boolean writable;
+        private final AtomicInteger used;
+
+        Slab(MemorySegment segment, int used, boolean writable) {
+            this.segment = segment;
+            this.writable = writable;
+            this.used = new AtomicInteger(used);
+        }
+
+        MemorySegment segment() {
+            return segment;
+        }
+
+        /**
+         * Reserves the slots after {@code size} for the index of that size, which only succeeds for the newest index
+         * sharing the slab and while there is room.
+         */
+        boolean claim(int size, int newSize, int dimensions) {
+            return writable && segment.byteSize() >= offset(newSize, dimensions) && used.compareAndSet(size, newSize);
+        }
+
+    }
+
+}
@@ -9,4 +9,34 @@ CREATE TABLE IF NOT EXISTS vector_store (
     embedding vector(1536)  -- 1536 is the default embedding dimension
     );
 
-CREATE INDEX ON vector_store USING HNSW (embedding vector_cosine_ops);
\ No newline at end of file
+CREATE INDEX IF NOT EXISTS vector_store_embedding_idx ON vector_store USING HNSW (embedding vector_cosine_ops);
+
+CREATE TABLE IF NOT EXISTS ingestion_checkpoint (
+    source text,
+    fingerprint text,
+    page int,
+    chunk_ids text[],
+    completed_at timestamp DEFAULT now(),
+    PRIMARY KEY (source, fingerprint, page)
+    );
+
+ALTER TABLE vector_store ADD COLUMN IF NOT EXISTS content_tsv tsvector
+    GENERATED ALWAYS AS (to_tsvector('english', coalesce(content, ''))) STORED;
+
+CREATE INDEX IF NOT EXISTS vector_store_content_tsv_idx ON vector_store USING GIN (content_tsv);
+
+CREATE TABLE IF NOT EXISTS chat_memory (
+    conversation_id text NOT NULL,
+    sequence bigserial,
+    type text NOT NULL,
+    content text,
+    created_at timestamp DEFAULT now(),
+    PRIMARY KEY (conversation_id, sequence)
+    );
+
+CREATE TABLE IF NOT EXISTS image_description (
+    fingerprint text PRIMARY KEY,
+    name text,
+    description text,
+    completed_at timestamp DEFAULT now()
+    );
@@ -0,0 +1,175 @@
+package pl.training.ai.chat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.tool.ToolCallback;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RoutingAdvisorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CallAdvisorChain chain = mock(CallAdvisorChain.class);
+    private final FakeProvider local = new FakeProvider("ollama");
+    private final FakeProvider remote = new FakeProvider("openai");
+    private final RoutingAdvisor advisor = new RoutingAdvisor(
+            new RoutingAdvisor.Provider("ollama", local.client, 2),
+            new RoutingAdvisor.Provider("openai", remote.client, 2),
+            Set.of("few-shot"), Set.of("multi-step"), RoutingAdvisor.Policy.REMOTE, 10, Duration.ofSeconds(1), 0.5,
+            Duration.ofMinutes(1), meterRegistry);
+
+    @Test
+    void routesSmallPromptsOfLocalEndpointsToTheLocalProvider() {
+        var response = advisor.adviseCall(request("few-shot", "short", ChatOptions.builder().build()), chain);
+
+        assertEquals("ollama", text(response));
+        assertEquals(1, meterRegistry.counter("chat.router.decisions", "endpoint", "few-shot", "provider", "ollama",
+                "reason", "policy").count());
+    }
+
+    @Test
+    void routesLargePromptsOfLocalEndpointsToTheRemoteProvider() {
+        var response = advisor.adviseCall(request("few-shot", "a".repeat(100), ChatOptions.builder().build()), chain);
+
+        assertEquals("openai", text(response));
+        assertTrue(local.prompts.isEmpty());
+    }
+
+    @Test
+    void routesOtherEndpointsByTheDefaultPolicy() {
+        var response = advisor.adviseCall(request("chat", "short", ChatOptions.builder().build()), chain);
+
+        assertEquals("openai", text(response));
+    }
+
+    @Test
+    void failsOverWhenThePrimaryProviderFails() {
+        local.failing = true;
+
+        var response = advisor.adviseCall(request("few-shot", "short", ChatOptions.builder().build()), chain);
+
+        assertEquals("openai", text(response));
+        assertEquals(1, meterRegistry.counter("chat.router.failovers", "from", "ollama", "to", "openai",
+                "exception", "IllegalStateException").count());
+    }
+
+    @Test
+    void failsOverWhenThePrimaryStreamSendsNoChunkInTime() {
+        local.stalling = true;
+
+        var responses = advisor.adviseStream(request("few-shot", "short", ChatOptions.builder().build()),
+                mock(StreamAdvisorChain.class)).collectList().block(Duration.ofSeconds(5));
+
+        assertEquals(List.of("openai"), responses.stream().map(RoutingAdvisorTest::text).toList());
+        assertEquals(1, meterRegistry.counter("chat.router.failovers", "from", "ollama", "to", "openai",
+                "exception", "TimeoutException").count());
+    }
+
+    @Test
+    void avoidsAFailingProviderUntilTheCooldownPasses() {
+        local.failing = true;
+        for (int call = 0; call < 4; call++) {
+            advisor.adviseCall(request("few-shot", "short", ChatOptions.builder().build()), chain);
+        }
+
+        advisor.adviseCall(request("few-shot", "short", ChatOptions.builder().build()), chain);
+
+        assertEquals(4, local.prompts.size());
+        assertEquals(1, meterRegistry.counter("chat.router.decisions", "endpoint", "few-shot", "provider", "openai",
+                "reason", "unhealthy").count());
+    }
+
+    @Test
+    void forwardsToolCallbacksAndOptionsWithoutTheModelName() {
+        var toolCallback = mock(ToolCallback.class);
+        var options = ToolCallingChatOptions.builder()
+                .model("gpt-4o")
+                .temperature(0.3)
+                .toolCallbacks(List.of(toolCallback))
+                .toolContext(Map.of("userId", "1234"))
+                .build();
+
+        advisor.adviseCall(request("multi-step", "short", options), chain);
+
+        var forwarded = assertInstanceOf(ToolCallingChatOptions.class, remote.prompts.getFirst().getOptions());
+        assertNull(forwarded.getModel());
+        assertEquals(0.3, forwarded.getTemperature());
+        assertNull(forwarded.getMaxTokens());
+        assertEquals(List.of(toolCallback), forwarded.getToolCallbacks());
+        assertEquals(Map.of("userId", "1234"), forwarded.getToolContext());
+    }
+
+    private static ChatClientRequest request(String endpoint, String user, ChatOptions options) {
+        return ChatClientRequest.builder()
+                .prompt(new Prompt(List.of(new UserMessage(user)), options))
+                .context(Map.of(AdvisorParams.ENDPOINT, endpoint))
+                .build();
+    }
+
+    private static String text(ChatClientResponse response) {
+        return response.chatResponse().getResult().getOutput().getText();
+    }
+
+    /**
+     * Provider client answering with its name, failing or, when streaming, stalling, and recording the forwarded prompts.
+     */
+    private static class FakeProvider {
+
+        private final ChatClient client = mock(ChatClient.class);
+        private final List<Prompt> prompts = new ArrayList<>();
+        private boolean failing;
+        private boolean stalling;
+
+        @SuppressWarnings("unchecked")
+        FakeProvider(String name) {
+            var requestSpec = mock(ChatClient.ChatClientRequestSpec.class);
+            var callResponseSpec = mock(ChatClient.CallResponseSpec.class);
+            var streamResponseSpec = mock(ChatClient.StreamResponseSpec.class);
+            when(client.prompt(any(Prompt.class))).thenAnswer(invocation -> {
+                prompts.add(invocation.getArgument(0));
+                return requestSpec;
+            });
+            when(requestSpec.advisors(any(Consumer.class))).thenReturn(requestSpec);
+            when(requestSpec.call()).thenReturn(callResponseSpec);
+            when(requestSpec.stream()).thenReturn(streamResponseSpec);
+            when(callResponseSpec.chatClientResponse()).thenAnswer(invocation -> {
+                if (failing) {
+                    throw new IllegalStateException(name + " is down");
+                }
+                return response(name);
+            });
+            when(streamResponseSpec.chatClientResponse()).thenAnswer(invocation -> stalling ? Flux.never() : Flux.just(response(name)));
+        }
+
+        private static ChatClientResponse response(String name) {
+            return ChatClientResponse.builder()
+                    .chatResponse(new ChatResponse(List.of(new Generation(new AssistantMessage(name)))))
+                    .build();
+        }
+
+    }
+
+}
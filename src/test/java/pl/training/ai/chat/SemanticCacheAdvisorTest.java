@@ -0,0 +1,154 @@
+package pl.training.ai.chat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SemanticCacheAdvisorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CallAdvisorChain chain = mock(CallAdvisorChain.class);
+
+    private SemanticCacheAdvisor advisor;
+
+    @BeforeEach
+    void beforeEach() {
+        advisor = new SemanticCacheAdvisor(new TextHashEmbeddingModel(), Set.of("jokes"), 0.95, 2, Duration.ofHours(1), meterRegistry);
+        when(chain.nextCall(any())).thenAnswer(invocation -> {
+            var request = invocation.<ChatClientRequest>getArgument(0);
+            var answer = "answer " + calls.incrementAndGet();
+            return ChatClientResponse.builder()
+                    .chatResponse(new ChatResponse(List.of(new Generation(new AssistantMessage(answer)))))
+                    .context(request.context())
+                    .build();
+        });
+    }
+
+    @Test
+    void answersARepeatedQuestionFromTheCache() {
+        var first = advisor.adviseCall(request("jokes", "You are funny.", "Tell a joke"), chain);
+        var second = advisor.adviseCall(request("jokes", "You are funny.", "Tell a joke"), chain);
+
+        assertEquals(1, calls.get());
+        assertEquals(text(first), text(second));
+        assertEquals(1, meterRegistry.counter("chat.semantic.cache", "endpoint", "jokes", "result", "hit").count());
+        assertEquals(1, meterRegistry.counter("chat.semantic.cache", "endpoint", "jokes", "result", "miss").count());
+    }
+
+    @Test
+    void missesAnotherQuestion() {
+        advisor.adviseCall(request("jokes", "You are funny.", "Tell a joke"), chain);
+        advisor.adviseCall(request("jokes", "You are funny.", "Explain a joke"), chain);
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void doesNotShareAnswersBetweenSystemPrompts() {
+        advisor.adviseCall(request("jokes", "You are funny.", "Tell a joke"), chain);
+        var other = advisor.adviseCall(request("jokes", "You are grumpy.", "Tell a joke"), chain);
+
+        assertEquals(2, calls.get());
+        assertEquals("answer 2", text(other));
+    }
+
+    @Test
+    void passesThroughEndpointsThatDidNotOptIn() {
+        advisor.adviseCall(request("chat", "You are funny.", "Tell a joke"), chain);
+        advisor.adviseCall(request("chat", "You are funny.", "Tell a joke"), chain);
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedAnswer() {
+        advisor.adviseCall(request("jokes", "", "first"), chain);
+        advisor.adviseCall(request("jokes", "", "second"), chain);
+        advisor.adviseCall(request("jokes", "", "first"), chain);
+        advisor.adviseCall(request("jokes", "", "third"), chain);
+
+        advisor.adviseCall(request("jokes", "", "first"), chain);
+        advisor.adviseCall(request("jokes", "", "second"), chain);
+
+        assertEquals(4, calls.get());
+    }
+
+    @Test
+    void boundsAllPartitionsTogether() {
+        advisor.adviseCall(request("jokes", "You are funny.", "Tell a joke"), chain);
+        advisor.adviseCall(request("jokes", "You are grumpy.", "Tell a joke"), chain);
+        advisor.adviseCall(request("jokes", "You are bored.", "Tell a joke"), chain);
+
+        advisor.adviseCall(request("jokes", "You are funny.", "Tell a joke"), chain);
+
+        assertEquals(4, calls.get());
+        assertEquals(2, meterRegistry.get("chat.semantic.cache.size").tag("endpoint", "jokes").gauge().value());
+    }
+
+    private static ChatClientRequest request(String endpoint, String system, String user) {
+        var prompt = system.isEmpty() ? new Prompt(new UserMessage(user)) : new Prompt(new SystemMessage(system), new UserMessage(user));
+        return ChatClientRequest.builder()
+                .prompt(prompt)
+                .context(Map.of(AdvisorParams.ENDPOINT, endpoint))
+                .build();
+    }
+
+    private static String text(ChatClientResponse response) {
+        return response.chatResponse().getResult().getOutput().getText();
+    }
+
+    /**
+     * Equal texts get equal vectors, different ones nearly orthogonal.
+     */
+    private static class TextHashEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            var embeddings = new ArrayList<Embedding>();
+            for (var text : request.getInstructions()) {
+                var random = new Random(text.hashCode());
+                var vector = new float[64];
+                for (int index = 0; index < vector.length; index++) {
+                    vector[index] = (float) random.nextGaussian();
+                }
+                embeddings.add(new Embedding(vector, embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+
+    }
+
+}
@@ -0,0 +1,68 @@
+package pl.training.ai.chat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class TokenWindowChatMemoryTest {
+
+    private final PostgresChatMemoryRepository repository = mock(PostgresChatMemoryRepository.class);
+    private final TokenCountEstimator tokenCountEstimator = mock(TokenCountEstimator.class);
+    private final TokenWindowChatMemory chatMemory = new TokenWindowChatMemory(repository, tokenCountEstimator, 10);
+
+    @BeforeEach
+    void beforeEach() {
+        // one token per word
+        when(tokenCountEstimator.estimate(anyString()))
+                .thenAnswer(invocation -> invocation.<String>getArgument(0).split("\\s+").length);
+    }
+
+    @Test
+    void returnsTheWholeConversationWhenItFits() {
+        var messages = List.<Message>of(new UserMessage("one two"), new AssistantMessage("three four"));
+        when(repository.findByConversationId("conversation")).thenReturn(messages);
+
+        assertEquals(messages, chatMemory.get("conversation"));
+    }
+
+    @Test
+    void keepsTheNewestMessagesWithinTheBudgetInOrder() {
+        var oldest = new UserMessage("one two three four");
+        var middle = new AssistantMessage("five six seven");
+        var newest = new UserMessage("eight nine ten eleven twelve");
+        when(repository.findByConversationId("conversation")).thenReturn(List.of(oldest, middle, newest));
+
+        assertEquals(List.of(middle, newest), chatMemory.get("conversation"));
+    }
+
+    @Test
+    void stopsAtTheFirstMessageOverTheBudget() {
+        var small = new UserMessage("one");
+        var large = new AssistantMessage("two three four five six seven eight nine ten");
+        var newest = new UserMessage("eleven two");
+        when(repository.findByConversationId("conversation")).thenReturn(List.of(small, large, newest));
+
+        assertEquals(List.of(newest), chatMemory.get("conversation"));
+    }
+
+    @Test
+    void handsAppendsAndClearsToTheRepository() {
+        var messages = List.<Message>of(new UserMessage("hello"));
+
+        chatMemory.add("conversation", messages);
+        chatMemory.clear("conversation");
+
+        verify(repository).append("conversation", messages);
+        verify(repository).deleteByConversationId("conversation");
+    }
+
+}
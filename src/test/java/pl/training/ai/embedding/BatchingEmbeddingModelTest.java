@@ -0,0 +1,144 @@
+package pl.training.ai.embedding;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchingEmbeddingModelTest {
+
+    private static final int MAX_BATCH_SIZE = 8;
+
+    private final RecordingEmbeddingModel delegate = new RecordingEmbeddingModel();
+    private final BatchingEmbeddingModel model = new BatchingEmbeddingModel(delegate, MAX_BATCH_SIZE,
+            Duration.ofMillis(50), Duration.ofMillis(200), 2, new SimpleMeterRegistry());
+
+    @AfterEach
+    void afterEach() throws InterruptedException {
+        model.close();
+    }
+
+    @Test
+    void coalescesConcurrentRequestsIntoBatches() throws Exception {
+        var start = new CountDownLatch(1);
+        var results = new ArrayList<Future<float[]>>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int index = 0; index < MAX_BATCH_SIZE; index++) {
+                var text = "text " + index;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return model.embed(text);
+                }));
+            }
+            start.countDown();
+            for (int index = 0; index < MAX_BATCH_SIZE; index++) {
+                assertArrayEquals(RecordingEmbeddingModel.vector("text " + index), results.get(index).get());
+            }
+        }
+
+        assertTrue(delegate.batches.size() < MAX_BATCH_SIZE);
+        assertEquals(MAX_BATCH_SIZE, delegate.batches.stream().mapToInt(List::size).sum());
+    }
+
+    @Test
+    void keepsTheOrderOfTheTextsOfOneRequest() {
+        var response = model.call(new EmbeddingRequest(List.of("a", "bb", "ccc"), EmbeddingOptionsBuilder.builder().build()));
+
+        assertEquals(3, response.getResults().size());
+        assertArrayEquals(RecordingEmbeddingModel.vector("a"), response.getResults().get(0).getOutput());
+        assertArrayEquals(RecordingEmbeddingModel.vector("ccc"), response.getResults().get(2).getOutput());
+        assertEquals(2, response.getResults().get(2).getIndex());
+    }
+
+    @Test
+    void passesThroughRequestsWithModelOptions() {
+        var options = EmbeddingOptionsBuilder.builder().withModel("text-embedding-3-large").build();
+
+        model.call(new EmbeddingRequest(List.of("text"), options));
+
+        assertEquals(1, delegate.batches.size());
+        assertEquals("text-embedding-3-large", delegate.models.getFirst());
+    }
+
+    @Test
+    void passesThroughRequestsOfAFullBatch() {
+        var texts = new ArrayList<String>();
+        for (int index = 0; index < MAX_BATCH_SIZE; index++) {
+            texts.add("text " + index);
+        }
+
+        var response = model.call(new EmbeddingRequest(texts, EmbeddingOptionsBuilder.builder().build()));
+
+        assertEquals(MAX_BATCH_SIZE, response.getResults().size());
+        assertEquals(List.of(texts), delegate.batches);
+    }
+
+    @Test
+    void failsEveryRequestOfAFailedBatch() {
+        delegate.failing = true;
+
+        var exception = assertThrows(IllegalStateException.class, () -> model.embed("text"));
+
+        assertEquals("embedding failed", exception.getMessage());
+    }
+
+    @Test
+    void passesThroughRequestsAfterClose() throws InterruptedException {
+        model.close();
+
+        var response = model.call(new EmbeddingRequest(List.of("text"), EmbeddingOptionsBuilder.builder().build()));
+
+        assertArrayEquals(RecordingEmbeddingModel.vector("text"), response.getResults().getFirst().getOutput());
+        assertEquals(List.of(List.of("text")), delegate.batches);
+    }
+
+    /**
+     * Records the texts and the model of every call, the vector is derived from the text.
+     */
+    private static class RecordingEmbeddingModel implements EmbeddingModel {
+
+        private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> models = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean failing;
+
+        static float[] vector(String text) {
+            return new float[]{text.length(), text.hashCode()};
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            if (failing) {
+                throw new IllegalStateException("embedding failed");
+            }
+            batches.add(List.copyOf(request.getInstructions()));
+            models.add(String.valueOf(request.getOptions().getModel()));
+            var embeddings = new ArrayList<Embedding>();
+            for (var text : request.getInstructions()) {
+                embeddings.add(new Embedding(vector(text), embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+
+    }
+
+}
@@ -0,0 +1,134 @@
+package pl.training.ai.multimodel;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import pl.training.ai.Hashes;
+import pl.training.ai.PromptTemplates;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ImageDescriberTest {
+
+    private static final String PROMPT = "Describe the image";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final ChatClient chatClient = mock(ChatClient.class);
+    private final ChatClient.CallResponseSpec callResponseSpec = mock(ChatClient.CallResponseSpec.class);
+    private final PromptTemplates promptTemplates = mock(PromptTemplates.class);
+
+    private ImageDescriber describer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void beforeEach() {
+        var requestSpec = mock(ChatClient.ChatClientRequestSpec.class);
+        when(chatClient.prompt()).thenReturn(requestSpec);
+        when(requestSpec.user(any(Consumer.class))).thenReturn(requestSpec);
+        when(requestSpec.advisors(any(Consumer.class))).thenReturn(requestSpec);
+        when(requestSpec.call()).thenReturn(callResponseSpec);
+        when(promptTemplates.renderOnce(eq("image-description"), any())).thenReturn(PROMPT);
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), anyString())).thenReturn(List.of());
+        describer = new ImageDescriber(chatClient, jdbcTemplate, Schedulers.immediate(), promptTemplates, 2, 1,
+                Duration.ofMillis(1), Duration.ofMillis(1), meterRegistry);
+    }
+
+    @Test
+    void skipsImagesDescribedInAPreviousRun() {
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq(fingerprint("cat"))))
+                .thenReturn(List.of("A cat on a sofa"));
+        when(callResponseSpec.content()).thenReturn("A dog in a park");
+
+        var descriptions = describe(image("cat"), image("dog"));
+
+        assertEquals(new ImageDescriber.Description("cat", ImageDescriber.Status.SKIPPED, "A cat on a sofa", null),
+                find(descriptions, "cat"));
+        assertEquals(new ImageDescriber.Description("dog", ImageDescriber.Status.DESCRIBED, "A dog in a park", null),
+                find(descriptions, "dog"));
+        verify(chatClient, times(1)).prompt();
+        verify(jdbcTemplate).update(anyString(), eq(fingerprint("dog")), eq("dog"), eq("A dog in a park"));
+        verify(jdbcTemplate, never()).update(anyString(), eq(fingerprint("cat")), any(), any());
+    }
+
+    @Test
+    void retriesARateLimitedImage() {
+        when(callResponseSpec.content())
+                .thenThrow(new NonTransientAiException("429 - Rate limit reached"))
+                .thenReturn("A dog in a park");
+
+        var descriptions = describe(image("dog"));
+
+        assertEquals(ImageDescriber.Status.DESCRIBED, find(descriptions, "dog").status());
+        assertEquals(1, meterRegistry.counter("images.description.retries").count());
+    }
+
+    @Test
+    void reportsAnImageThatKeepsFailing() {
+        when(callResponseSpec.content()).thenThrow(new NonTransientAiException("400 - Invalid image"));
+
+        var descriptions = describe(image("dog"));
+
+        assertEquals(ImageDescriber.Status.FAILED, find(descriptions, "dog").status());
+        assertEquals(0, meterRegistry.counter("images.description.retries").count());
+        verify(jdbcTemplate, never()).update(anyString(), any(), any(), any());
+    }
+
+    @Test
+    void treatsRateLimitsAsTransient() {
+        var tooManyRequests = HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests",
+                new HttpHeaders(), new byte[0], StandardCharsets.UTF_8);
+
+        assertTrue(ImageDescriber.isTransient(new NonTransientAiException("429 - Rate limit reached")));
+        assertTrue(ImageDescriber.isTransient(new IllegalStateException(tooManyRequests)));
+        assertTrue(ImageDescriber.isTransient(new TransientAiException("503 - Service unavailable")));
+        assertFalse(ImageDescriber.isTransient(new NonTransientAiException("400 - Invalid image")));
+    }
+
+    private List<ImageDescriber.Description> describe(ImageDescriber.Image... images) {
+        return describer.describe(Flux.just(images)).collectList().block();
+    }
+
+    private static ImageDescriber.Image image(String name) {
+        return new ImageDescriber.Image(name, MimeTypeUtils.IMAGE_PNG, () -> content(name));
+    }
+
+    private static byte[] content(String name) {
+        return name.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String fingerprint(String name) {
+        return Hashes.sha256(PROMPT + '\u0000' + Hashes.sha256(content(name)));
+    }
+
+    private static ImageDescriber.Description find(List<ImageDescriber.Description> descriptions, String name) {
+        return descriptions.stream()
+                .filter(description -> description.name().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+
+}
@@ -0,0 +1,52 @@
+package pl.training.ai.multimodel;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpeechStreamerTest {
+
+    @Test
+    void keepsAShortTextInOneSegment() {
+        assertEquals(List.of("Hello there. How are you?"), SpeechStreamer.split("Hello there. How are you?", 100));
+    }
+
+    @Test
+    void splitsAtSentenceBoundaries() {
+        var segments = SpeechStreamer.split("First sentence here. Second sentence here. Third one.", 45);
+
+        assertEquals(List.of("First sentence here. Second sentence here.", "Third one."), segments);
+    }
+
+    @Test
+    void cutsASentenceOverTheLimitAtWhitespace() {
+        var segments = SpeechStreamer.split("alpha beta gamma delta epsilon", 12);
+
+        assertEquals(List.of("alpha beta", "gamma delta", "epsilon"), segments);
+        segments.forEach(segment -> assertTrue(segment.length() <= 12));
+    }
+
+    @Test
+    void cutsAWordLongerThanTheLimit() {
+        assertEquals(List.of("abcde", "fghij"), SpeechStreamer.split("abcdefghij", 5));
+    }
+
+    @Test
+    void keepsEveryWordInOrder() {
+        var text = "Spring AI streams speech. Long texts are split into segments! Are they played in order? "
+                + "Each segment is synthesized on its own, and the audio is concatenated.";
+
+        var segments = SpeechStreamer.split(text, 30);
+
+        assertEquals(text.replaceAll("\\s+", " ").strip(), String.join(" ", segments));
+        segments.forEach(segment -> assertTrue(segment.length() <= 30, segment));
+    }
+
+    @Test
+    void returnsNoSegmentsForABlankText() {
+        assertEquals(List.of(), SpeechStreamer.split("  ", 10));
+    }
+
+}
@@ -0,0 +1,57 @@
+package pl.training.ai.multimodel;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TranscriptStitcherTest {
+
+    private final TranscriptStitcher stitcher = new TranscriptStitcher();
+
+    @Test
+    void keepsTheFirstTranscript() {
+        assertEquals("The quick brown fox", stitcher.append("  The quick brown fox "));
+    }
+
+    @Test
+    void dropsTheRepeatedOverlap() {
+        stitcher.append("the quick brown fox jumps over");
+
+        assertEquals("the lazy dog", stitcher.append("fox jumps over the lazy dog"));
+    }
+
+    @Test
+    void ignoresCaseAndPunctuationWhenMatching() {
+        stitcher.append("We met in Paris, last spring.");
+
+        assertEquals("It rained every day.", stitcher.append("in paris last Spring! It rained every day."));
+    }
+
+    @Test
+    void dropsACutOffWordBeforeTheOverlap() {
+        stitcher.append("we went to the market and bought");
+
+        assertEquals("some apples", stitcher.append("ent to the market and bought some apples"));
+    }
+
+    @Test
+    void keepsTheTranscriptWhenTooFewWordsAreShared() {
+        stitcher.append("hello world");
+
+        assertEquals("world peace now", stitcher.append("world peace now"));
+    }
+
+    @Test
+    void matchesAgainstTheTextStitchedSoFar() {
+        stitcher.append("one two three four");
+        stitcher.append("three four five six seven");
+
+        assertEquals("eight nine", stitcher.append("five six seven eight nine"));
+    }
+
+    @Test
+    void returnsNothingForAnEmptyTranscript() {
+        assertEquals("", stitcher.append("   "));
+    }
+
+}
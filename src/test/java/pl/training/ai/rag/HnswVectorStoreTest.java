@@ -0,0 +1,116 @@
+package pl.training.ai.rag;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswVectorStoreTest {
+
+    private static final int TOP_K = 10;
+    private static final double RECALL_FLOOR = 0.9;
+
+    private final TextHashEmbeddingModel embeddingModel = new TextHashEmbeddingModel(32);
+    private final HnswVectorStore.Parameters parameters = new HnswVectorStore.Parameters(16, 100, 64, 0.25);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recallAgainstTheExactScanIsAboveTheFloor() {
+        var exact = new MappedVectorStore(embeddingModel, directory, "exact");
+        var hnsw = new HnswVectorStore(embeddingModel, parameters, directory, "hnsw");
+        exact.add(documents(0, 2000));
+        // concurrent inserts, as the ingestion pipeline does them
+        IntStream.range(0, 2000).parallel()
+                .forEach(index -> hnsw.insert(new StoredDocument("id-" + index, "text " + index, Map.of()),
+                        embeddingModel.vector("text " + index)));
+
+        var found = 0;
+        for (int query = 0; query < 100; query++) {
+            var request = SearchRequest.builder().query("query " + query).topK(TOP_K).build();
+            var expected = new HashSet<String>();
+            exact.similaritySearch(request).forEach(document -> expected.add(document.getId()));
+            for (var document : hnsw.similaritySearch(request)) {
+                if (expected.contains(document.getId())) {
+                    found++;
+                }
+            }
+        }
+
+        var recall = found / (100.0 * TOP_K);
+        assertTrue(recall >= RECALL_FLOOR, "recall@" + TOP_K + " " + recall + " is below " + RECALL_FLOOR);
+    }
+
+    @Test
+    void keepsAppendsAndTombstonesAfterReload() throws IOException {
+        var store = new HnswVectorStore(embeddingModel, parameters, directory, "store");
+        store.add(documents(0, 10));
+        store.delete(List.of("id-3", "id-4"));
+        store.add(documents(10, 20));
+
+        var reloaded = new HnswVectorStore(embeddingModel, parameters, directory, "store");
+        reloaded.load();
+
+        assertEquals(20, reloaded.size());
+        assertTrue(reloaded.similaritySearch(SearchRequest.builder().query("text 3").topK(20).similarityThreshold(0.99).build()).isEmpty());
+        for (var index : List.of(0, 5, 19)) {
+            var results = reloaded.similaritySearch(SearchRequest.builder().query("text " + index).topK(1).build());
+            assertEquals("id-" + index, results.getFirst().getId());
+        }
+    }
+
+    @Test
+    void keepsTombstonesWhenTheGraphIsRebuiltOnLoad() throws IOException {
+        var store = new HnswVectorStore(embeddingModel, parameters, directory, "store");
+        store.add(documents(0, 10));
+        store.delete(List.of("id-3"));
+        Files.delete(directory.resolve("store.hnsw"));
+
+        var reloaded = new HnswVectorStore(embeddingModel, parameters, directory, "store");
+        reloaded.load();
+
+        assertEquals(9, reloaded.size());
+        assertFalse(reloaded.findIds("source", "test").contains("id-3"));
+        reloaded.add(documents(10, 12));
+        var again = new HnswVectorStore(embeddingModel, parameters, directory, "store");
+        again.load();
+        assertEquals(11, again.findIds("source", "test").size());
+    }
+
+    @Test
+    void rebuildsTheGraphWhenTombstonesExceedTheRatio() throws IOException {
+        var store = new HnswVectorStore(embeddingModel, parameters, directory, "store");
+        store.add(documents(0, 100));
+
+        store.delete(IntStream.range(0, 40).mapToObj(index -> "id-" + index).toList());
+
+        assertEquals(60, store.size());
+        var reloaded = new HnswVectorStore(embeddingModel, parameters, directory, "store");
+        reloaded.load();
+        assertEquals(60, reloaded.size());
+        assertTrue(reloaded.findIds("source", "test").containsAll(List.of("id-40", "id-99")));
+        assertFalse(reloaded.findIds("source", "test").contains("id-0"));
+        for (var index : List.of(40, 70, 99)) {
+            var results = reloaded.similaritySearch(SearchRequest.builder().query("text " + index).topK(1).build());
+            assertEquals("id-" + index, results.getFirst().getId());
+        }
+    }
+
+    private List<Document> documents(int from, int to) {
+        return IntStream.range(from, to)
+                .mapToObj(index -> new Document("id-" + index, "text " + index, Map.of("source", "test")))
+                .toList();
+    }
+
+}
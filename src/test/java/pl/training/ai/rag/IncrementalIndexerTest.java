@@ -0,0 +1,95 @@
+package pl.training.ai.rag;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalIndexerTest {
+
+    private static final String SOURCE = "guide.pdf";
+
+    private final TextHashEmbeddingModel embeddingModel = new TextHashEmbeddingModel(16);
+
+    @TempDir
+    Path directory;
+
+    private MappedVectorStore vectorStore;
+    private IncrementalIndexer indexer;
+
+    @BeforeEach
+    void beforeEach() {
+        vectorStore = new MappedVectorStore(embeddingModel, directory, "store");
+        indexer = new IncrementalIndexer(vectorStore, source -> vectorStore.findIds(IncrementalIndexer.SOURCE, source));
+    }
+
+    @Test
+    void embedsOnlyNewChunksAndDeletesVanishedOnes() {
+        indexer.reindex(SOURCE, chunks("alpha", "beta", "gamma"));
+        var callsBefore = embeddingModel.calls();
+
+        var result = indexer.reindex(SOURCE, chunks("alpha", "beta", "delta"));
+
+        assertEquals(new IncrementalIndexer.Result(1, 1, 2), result);
+        assertEquals(callsBefore + 1, embeddingModel.calls());
+        assertEquals(ids("alpha", "beta", "delta"), vectorStore.findIds(IncrementalIndexer.SOURCE, SOURCE));
+    }
+
+    @Test
+    void ignoresDuplicateAndUnchangedChunks() {
+        indexer.reindex(SOURCE, chunks("alpha", "beta"));
+
+        var result = indexer.reindex(SOURCE, chunks("alpha", "alpha", "beta"));
+
+        assertEquals(new IncrementalIndexer.Result(0, 0, 2), result);
+    }
+
+    @Test
+    void keepsVanishedChunksWhenAddingFails() {
+        indexer.reindex(SOURCE, chunks("alpha", "beta"));
+        var failing = new IncrementalIndexer(new MappedVectorStore(embeddingModel, directory, "store") {
+
+            @Override
+            public void add(List<Document> documents) {
+                throw new IllegalStateException("Embedding failed");
+            }
+
+            @Override
+            public void delete(List<String> idList) {
+                vectorStore.delete(idList);
+            }
+
+        }, source -> vectorStore.findIds(IncrementalIndexer.SOURCE, source));
+
+        assertThrows(IllegalStateException.class, () -> failing.reindex(SOURCE, chunks("alpha", "gamma")));
+
+        assertEquals(ids("alpha", "beta"), vectorStore.findIds(IncrementalIndexer.SOURCE, SOURCE));
+    }
+
+    @Test
+    void givesTheSameChunkInAnotherSourceAnotherId() {
+        var chunk = new Document("alpha");
+
+        assertNotEquals(IncrementalIndexer.identify("a.pdf", chunk).getId(), IncrementalIndexer.identify("b.pdf", chunk).getId());
+        assertEquals(IncrementalIndexer.identify("a.pdf", chunk).getId(), IncrementalIndexer.identify("a.pdf", new Document("alpha")).getId());
+    }
+
+    private static List<Document> chunks(String... texts) {
+        return Arrays.stream(texts).map(Document::new).toList();
+    }
+
+    private static Set<String> ids(String... texts) {
+        return Arrays.stream(texts)
+                .map(text -> IncrementalIndexer.identify(SOURCE, new Document(text)).getId())
+                .collect(Collectors.toSet());
+    }
+
+}
@@ -0,0 +1,112 @@
+package pl.training.ai.rag;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedVectorStoreTest {
+
+    private final TextHashEmbeddingModel embeddingModel = new TextHashEmbeddingModel(32);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsDocumentsAddedInSeveralAppendsAfterReload() throws IOException {
+        var store = new MappedVectorStore(embeddingModel, directory, "store");
+        store.add(documents(0, 10));
+        store.add(documents(10, 20));
+        store.add(documents(20, 25));
+
+        var reloaded = new MappedVectorStore(embeddingModel, directory, "store");
+        reloaded.load();
+
+        for (var index : List.of(0, 12, 24)) {
+            var results = reloaded.similaritySearch(SearchRequest.builder().query("text " + index).topK(1).build());
+            assertEquals("id-" + index, results.getFirst().getId());
+            assertEquals(1.0, results.getFirst().getScore(), 1e-5);
+        }
+    }
+
+    @Test
+    void keepsDocumentsAndVectorsAlignedAfterDelete() throws IOException {
+        var store = new MappedVectorStore(embeddingModel, directory, "store");
+        store.add(documents(0, 10));
+        store.delete(List.of("id-3", "id-4"));
+        store.add(documents(10, 12));
+
+        var reloaded = new MappedVectorStore(embeddingModel, directory, "store");
+        reloaded.load();
+
+        assertTrue(reloaded.similaritySearch(SearchRequest.builder().query("text 3").topK(10).similarityThreshold(0.99).build()).isEmpty());
+        for (var index : List.of(5, 11)) {
+            var results = reloaded.similaritySearch(SearchRequest.builder().query("text " + index).topK(1).build());
+            assertEquals("id-" + index, results.getFirst().getId());
+        }
+    }
+
+    @Test
+    void rejectsDocumentsFromAnotherRewrite() throws IOException {
+        var store = new MappedVectorStore(embeddingModel, directory, "store");
+        store.add(documents(0, 10));
+        var staleDocuments = Files.copy(directory.resolve("store.docs"), directory.resolve("stale.docs"));
+        store.delete(List.of("id-3"));
+        Files.move(staleDocuments, directory.resolve("store.docs"), StandardCopyOption.REPLACE_EXISTING);
+
+        var reloaded = new MappedVectorStore(embeddingModel, directory, "store");
+
+        assertThrows(IOException.class, reloaded::load);
+    }
+
+    @Test
+    void loadsThePreviousCommitWhenTheDocumentsHeaderOfAnAppendWasNotWritten() throws IOException {
+        var store = new MappedVectorStore(embeddingModel, directory, "store");
+        store.add(documents(0, 10));
+        var staleDocuments = Files.copy(directory.resolve("store.docs"), directory.resolve("stale.docs"));
+        store.add(documents(10, 20));
+        Files.move(staleDocuments, directory.resolve("store.docs"), StandardCopyOption.REPLACE_EXISTING);
+
+        var reloaded = new MappedVectorStore(embeddingModel, directory, "store");
+        reloaded.load();
+        reloaded.add(documents(20, 22));
+        var again = new MappedVectorStore(embeddingModel, directory, "store");
+        again.load();
+
+        assertTrue(again.findIds("source", "test").containsAll(List.of("id-0", "id-21")));
+        assertEquals(12, again.findIds("source", "test").size());
+        assertEquals("id-21", again.similaritySearch(SearchRequest.builder().query("text 21").topK(1).build()).getFirst().getId());
+    }
+
+    @Test
+    void appendingToAnOlderIndexDoesNotOverwriteTheNewerOne() {
+        var base = VectorIndex.empty().append(List.of(vector(1, 0), vector(0, 1)));
+        var newer = base.append(List.of(vector(1, 1)));
+        var branch = base.append(List.of(vector(-1, 0)));
+
+        assertEquals(3, newer.size());
+        assertArrayEquals(VectorIndex.normalize(vector(1, 1)), newer.vector(2), 1e-6f);
+        assertArrayEquals(vector(-1, 0), branch.vector(2), 1e-6f);
+        assertEquals(2, base.size());
+    }
+
+    private static float[] vector(float x, float y) {
+        return new float[] {x, y};
+    }
+
+    private static List<Document> documents(int from, int to) {
+        return IntStream.range(from, to)
+                .mapToObj(index -> Document.builder().id("id-" + index).text("text " + index).metadata("source", "test").build())
+                .toList();
+    }
+
+}
@@ -0,0 +1,53 @@
+package pl.training.ai.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deterministic embeddings seeded by the text, so equal texts get equal vectors and different ones nearly orthogonal.
+ */
+class TextHashEmbeddingModel implements EmbeddingModel {
+
+    private final int dimensions;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    TextHashEmbeddingModel(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        calls.incrementAndGet();
+        var embeddings = new ArrayList<Embedding>();
+        for (var text : request.getInstructions()) {
+            embeddings.add(new Embedding(vector(text), embeddings.size()));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return vector(document.getText());
+    }
+
+    int calls() {
+        return calls.get();
+    }
+
+    float[] vector(String text) {
+        var random = new Random(text.hashCode());
+        var vector = new float[dimensions];
+        for (int index = 0; index < dimensions; index++) {
+            vector[index] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+}
@@ -0,0 +1,74 @@
+package pl.training.ai.rag;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopKTest {
+
+    @Test
+    void keepsTheBestScoresSortedFromTheBest() {
+        var random = new Random(7);
+        var scores = new float[1000];
+        var topK = new TopK(10);
+        for (int slot = 0; slot < scores.length; slot++) {
+            scores[slot] = random.nextFloat();
+            topK.offer(slot, scores[slot]);
+        }
+
+        var count = topK.sort();
+
+        var expected = scores.clone();
+        Arrays.sort(expected);
+        assertEquals(10, count);
+        for (int index = 0; index < count; index++) {
+            assertEquals(expected[expected.length - 1 - index], topK.score(index), 0f);
+            assertEquals(scores[topK.slot(index)], topK.score(index), 0f);
+        }
+    }
+
+    @Test
+    void drainsInTheSameOrderAsSort() {
+        var topK = new TopK(3);
+        topK.offer(1, 0.5f);
+        topK.offer(2, 0.9f);
+        topK.offer(3, 0.1f);
+        topK.offer(4, 0.7f);
+        var slots = new int[3];
+        var scores = new float[3];
+
+        var count = topK.drain(slots, scores);
+
+        assertEquals(3, count);
+        assertArrayEquals(new int[] {2, 4, 1}, slots);
+    }
+
+    @Test
+    void isReusableWithADifferentCapacity() {
+        var topK = new TopK(2);
+        topK.offer(1, 0.2f);
+        topK.offer(2, 0.4f);
+        topK.sort();
+
+        topK.reset(4);
+        for (int slot = 0; slot < 6; slot++) {
+            topK.offer(slot, slot / 10f);
+        }
+
+        assertEquals(4, topK.sort());
+        assertEquals(5, topK.slot(0));
+        assertEquals(2, topK.slot(3));
+    }
+
+    @Test
+    void keepsNothingWithZeroCapacity() {
+        var topK = new TopK(0);
+        topK.offer(1, 1f);
+
+        assertEquals(0, topK.sort());
+    }
+
+}
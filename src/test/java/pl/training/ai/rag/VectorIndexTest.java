@@ -0,0 +1,95 @@
+package pl.training.ai.rag;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.Arena;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pl.training.ai.rag.DotProduct.FLOAT;
+
+class VectorIndexTest {
+
+    private static final int DIMENSIONS = 67; // not a multiple of any SIMD lane count, exercises the tail loop
+
+    private final Random random = new Random(42);
+
+    @Test
+    void scalarAndSimdDotProductsAgree() {
+        var vector = randomVector();
+        var query = randomVector();
+        var segment = Arena.ofAuto().allocate((long) DIMENSIONS * Float.BYTES, Float.BYTES);
+        java.lang.foreign.MemorySegment.copy(vector, 0, segment, FLOAT, 0, DIMENSIONS);
+        var expected = 0f;
+        for (int index = 0; index < DIMENSIONS; index++) {
+            expected += vector[index] * query[index];
+        }
+
+        assertEquals(expected, new ScalarDotProduct().dot(segment, 0, query), 1e-4f);
+        assertEquals(expected, DotProduct.create().dot(segment, 0, query), 1e-4f);
+    }
+
+    @Test
+    void searchMatchesABruteForceRanking() {
+        var vectors = new ArrayList<float[]>();
+        for (int index = 0; index < 500; index++) {
+            vectors.add(randomVector());
+        }
+        var index = VectorIndex.empty().append(vectors);
+        var query = VectorIndex.normalize(randomVector());
+
+        var hits = index.search(query, 5, -1, null);
+
+        var best = bruteForceBest(vectors, query);
+        assertEquals(5, hits.size());
+        assertEquals(best, hits.slot(0));
+        for (int hit = 1; hit < hits.size(); hit++) {
+            assertTrue(hits.score(hit - 1) >= hits.score(hit));
+        }
+    }
+
+    @Test
+    void searchAppliesThresholdAndFilter() {
+        var index = VectorIndex.empty().append(List.of(new float[] {1, 0}, new float[] {0, 1}, new float[] {1, 1}));
+
+        var hits = index.search(new float[] {1, 0}, 3, 0.5, slot -> slot != 0);
+
+        assertEquals(1, hits.size());
+        assertEquals(2, hits.slot(0));
+    }
+
+    @Test
+    void rejectsVectorsOfOtherDimensions() {
+        var index = VectorIndex.empty().append(List.of(new float[] {1, 0}));
+
+        assertThrows(IllegalArgumentException.class, () -> index.append(List.of(new float[] {1, 0, 0})));
+    }
+
+    private int bruteForceBest(List<float[]> vectors, float[] query) {
+        var best = -1;
+        var bestScore = Double.NEGATIVE_INFINITY;
+        for (int slot = 0; slot < vectors.size(); slot++) {
+            var vector = VectorIndex.normalize(vectors.get(slot));
+            var score = 0.0;
+            for (int index = 0; index < vector.length; index++) {
+                score += vector[index] * query[index];
+            }
+            if (score > bestScore) {
+                best = slot;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private float[] randomVector() {
+        var vector = new float[DIMENSIONS];
+        for (int index = 0; index < DIMENSIONS; index++) {
+            vector[index] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+}